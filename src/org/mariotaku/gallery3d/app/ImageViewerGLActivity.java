@@ -235,7 +235,8 @@ public final class ImageViewerGLActivity extends FragmentActivity implements Con
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
-
+		// Gallery is only used here, so don't initialize it on app startup.
+		GalleryUtils.initialize(this);
 		setContentView(R.layout.image_viewer_gl);
 
 		if (savedInstanceState == null) {
@@ -46,11 +46,12 @@ public interface Constants extends TwitterConstants {
 
 	public static final String USER_COLOR_PREFERENCES_NAME = "user_colors";
 	public static final String HOST_MAPPING_PREFERENCES_NAME = "host_mapping";
+	public static final String DNS_CACHE_PREFERENCES_NAME = "dns_cache";
 	public static final String SHARED_PREFERENCES_NAME = "preferences";
 	public static final String PERMISSION_PREFERENCES_NAME = "permissions";
 
 	public static final String DATABASES_NAME = "twidere.sqlite";
-	public static final int DATABASES_VERSION = 36;
+	public static final int DATABASES_VERSION = 42;
 
 	// The following 4 constants are not included in source code, you'd better
 	// use your own.
@@ -195,6 +196,9 @@ public interface Constants extends TwitterConstants {
 	public static final String PREFERENCE_KEY_DISPLAY_SENSITIVE_CONTENTS = "display_sensitive_contents";
 	public static final String PREFERENCE_KEY_FAST_SCROLL_THUMB = "fast_scroll_thumb";
 	public static final String PREFERENCE_KEY_LINK_HIGHLIGHTING = "link_highlighting";
+	public static final String PREFERENCE_KEY_BROWSER_USER_AGENT = "browser_user_agent";
+	public static final String PREFERENCE_KEY_BROWSER_USER_AGENT_FINGERPRINT = "browser_user_agent_fingerprint";
+	public static final String PREFERENCE_KEY_LEGACY_CACHES_DELETED = "legacy_caches_deleted";
 
 	public static final String PREFERENCE_DEFAULT_QUOTE_FORMAT = "RT @" + FORMAT_PATTERN_NAME + ": "
 			+ FORMAT_PATTERN_TEXT;
@@ -383,6 +387,10 @@ public interface Constants extends TwitterConstants {
 	public static final String INTENT_KEY_PERMISSIONS = "permissions";
 
 	public static final String QUERY_PARAM_NEW_ITEMS_COUNT = "new_items_count";
+	public static final String QUERY_PARAM_UPSERT = "upsert";
+	public static final String QUERY_PARAM_MAX_ID = "max_id";
+	public static final String QUERY_PARAM_MIN_ID = "min_id";
+	public static final String QUERY_PARAM_LIMIT = "limit";
 
 	public static final int MENU_HOME = android.R.id.home;
 	public static final int MENU_SEARCH = R.id.search;
@@ -515,6 +523,7 @@ public interface Constants extends TwitterConstants {
 
 	public static final String DIR_NAME_PROFILE_IMAGES = "profile_images";
 	public static final String DIR_NAME_CACHED_THUMBNAILS = "cached_thumbnails";
+	public static final String DIR_NAME_MEDIA = "media";
 
 	public static final int PANE_LEFT = R.id.fragment_container_left;
 	public static final int PANE_RIGHT = R.id.fragment_container_right;
@@ -19,20 +19,13 @@
 
 package org.mariotaku.twidere.activity;
 
-import static org.mariotaku.twidere.util.Utils.copyStream;
-import static org.mariotaku.twidere.util.Utils.getBestCacheDir;
 import static org.mariotaku.twidere.util.Utils.getImageLoaderHttpClient;
-import static org.mariotaku.twidere.util.Utils.getRedirectedHttpResponse;
 import static org.mariotaku.twidere.util.Utils.parseString;
 import static org.mariotaku.twidere.util.Utils.showErrorToast;
 import it.sephiroth.android.library.imagezoom.ImageViewTouch;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -41,11 +34,12 @@ import javax.microedition.khronos.egl.EGLDisplay;
 
 import org.mariotaku.twidere.Constants;
 import org.mariotaku.twidere.R;
+import org.mariotaku.twidere.app.TwidereApplication;
+import org.mariotaku.twidere.util.AsyncTask;
 import org.mariotaku.twidere.util.BitmapDecodeHelper;
+import org.mariotaku.twidere.util.MediaCache;
 
-import twitter4j.TwitterException;
 import twitter4j.http.HttpClientWrapper;
-import twitter4j.http.HttpResponse;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
@@ -58,6 +52,7 @@ import android.support.v4.app.LoaderManager;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.widget.ImageButton;
@@ -70,6 +65,7 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 	private ImageButton mRefreshStopSaveButton;
 	private boolean mImageLoaded;
 	private File mImageFile;
+	private PreviewLoadTask mPreviewLoadTask;
 
 	@Override
 	public void onClick(final View view) {
@@ -147,6 +143,7 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 
 	@Override
 	public void onLoadFinished(final Loader<ImageLoader.Result> loader, final ImageLoader.Result data) {
+		cancelPreviewLoad();
 		if (data != null && data.bitmap != null) {
 			mImageView.setImageBitmap(data.bitmap);
 			mImageFile = data.file;
@@ -184,6 +181,13 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 		loadImage(false);
 	}
 
+	private void cancelPreviewLoad() {
+		if (mPreviewLoadTask != null) {
+			mPreviewLoadTask.cancel(true);
+			mPreviewLoadTask = null;
+		}
+	}
+
 	private void loadImage(final boolean init) {
 		getSupportLoaderManager().destroyLoader(0);
 		final Uri uri = getIntent().getData();
@@ -191,7 +195,11 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 			finish();
 			return;
 		}
+		// Show cached preview while the original is being loaded.
+		cancelPreviewLoad();
 		mImageView.setImageBitmap(null);
+		mPreviewLoadTask = new PreviewLoadTask();
+		mPreviewLoadTask.execute(uri.toString());
 		final Bundle args = new Bundle();
 		args.putParcelable(INTENT_KEY_URI, uri);
 		if (init) {
@@ -229,6 +237,7 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 
 	private void stopLoading() {
 		getSupportLoaderManager().destroyLoader(0);
+		cancelPreviewLoad();
 		if (!mImageLoaded) {
 			mRefreshStopSaveButton.setImageResource(R.drawable.ic_menu_refresh);
 			mImageView.setImageBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.refresh_image));
@@ -236,22 +245,55 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 		}
 	}
 
-	public static class ImageLoader extends AsyncTaskLoader<ImageLoader.Result> {
+	private class PreviewLoadTask extends AsyncTask<String, Void, Bitmap> {
 
-		private static final String CACHE_DIR_NAME = "cached_images";
+		private final MediaCache mMediaCache;
+		private final int mMaxSize;
+
+		PreviewLoadTask() {
+			mMediaCache = TwidereApplication.getInstance(ImageViewerActivity.this).getMediaCache();
+			final int view_size = Math.max(mImageView.getWidth(), mImageView.getHeight());
+			final DisplayMetrics dm = getResources().getDisplayMetrics();
+			mMaxSize = view_size > 0 ? view_size : Math.max(dm.widthPixels, dm.heightPixels);
+		}
+
+		@Override
+		protected Bitmap doInBackground(final String... params) {
+			final File file = mMediaCache.getCachedPreview(params[0]);
+			if (file == null) return null;
+			final BitmapFactory.Options o = new BitmapFactory.Options();
+			o.inJustDecodeBounds = true;
+			BitmapFactory.decodeFile(file.getPath(), o);
+			if (o.outHeight <= 0) return null;
+			final BitmapFactory.Options o2 = new BitmapFactory.Options();
+			final int size = Math.max(o.outWidth, o.outHeight);
+			o2.inSampleSize = size > mMaxSize ? Math.round((float) size / mMaxSize) : 1;
+			try {
+				return BitmapDecodeHelper.decode(file.getPath(), o2);
+			} catch (final OutOfMemoryError e) {
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(final Bitmap result) {
+			if (result != null) {
+				mImageView.setImageBitmap(result);
+			}
+		}
+	}
+
+	public static class ImageLoader extends AsyncTaskLoader<ImageLoader.Result> {
 
 		private final Uri mUri;
-		private final Context mContext;
 		private final HttpClientWrapper mClient;
-
-		private File mCacheDir;
+		private final MediaCache mMediaCache;
 
 		public ImageLoader(final Context context, final Uri uri) {
 			super(context);
-			mContext = context;
 			mUri = uri;
 			mClient = getImageLoaderHttpClient(context);
-			init();
+			mMediaCache = TwidereApplication.getInstance(context).getMediaCache();
 		}
 
 		@Override
@@ -262,37 +304,18 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 			if ("http".equals(scheme) || "https".equals(scheme)) {
 				final String url = parseString(mUri.toString());
 				if (url == null) return new Result(null, null, null);
-				if (mCacheDir == null || !mCacheDir.exists()) {
-					init();
-				}
-				final File cache_file = new File(mCacheDir, getURLFilename(url));
-
-				// from SD cache
-				final Bitmap cached_bitmap = decodeFile(cache_file);
-				if (cached_bitmap != null) return new Result(cached_bitmap, cache_file, null);
-				// from web
 				try {
-					final HttpResponse resp = getRedirectedHttpResponse(mClient, url);
-					if (resp == null) return null;
-					final InputStream is = resp.asStream();
-					final OutputStream os = new FileOutputStream(cache_file);
-					copyStream(is, os);
-					os.close();
+					final File cache_file = mMediaCache.download(url, mClient);
+					if (cache_file == null) return null;
 					final Bitmap bitmap = decodeFile(cache_file);
 					if (bitmap == null) {
 						// The file is corrupted, so we remove it from
 						// cache.
-						if (cache_file.isFile()) {
-							cache_file.delete();
-						}
+						mMediaCache.remove(url);
 					}
 					return new Result(bitmap, cache_file, null);
-				} catch (final FileNotFoundException e) {
-					init();
 				} catch (final IOException e) {
 					return new Result(null, null, e);
-				} catch (final TwitterException e) {
-					return new Result(null, null, e);
 				}
 			} else if ("file".equals(scheme)) {
 				final File file = new File(mUri.getPath());
@@ -334,19 +357,6 @@ public class ImageViewerActivity extends FragmentActivity implements Constants,
 			return null;
 		}
 
-		private String getURLFilename(final String url) {
-			if (url == null) return null;
-			return url.replaceFirst("https?:\\/\\/", "").replaceAll("[^a-zA-Z0-9]", "_");
-		}
-
-		private void init() {
-			/* Find the dir to save cached images. */
-			mCacheDir = getBestCacheDir(mContext, CACHE_DIR_NAME);
-			if (mCacheDir != null && !mCacheDir.exists()) {
-				mCacheDir.mkdirs();
-			}
-		}
-
 		public static int getMaximumTextureSize() {
 			final EGL10 egl = (EGL10) EGLContext.getEGL();
 			final EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
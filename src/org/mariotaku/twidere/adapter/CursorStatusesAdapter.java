@@ -27,16 +27,20 @@ import static org.mariotaku.twidere.util.Utils.getAccountColor;
 import static org.mariotaku.twidere.util.Utils.getAccountScreenName;
 import static org.mariotaku.twidere.util.Utils.getAllAvailableImage;
 import static org.mariotaku.twidere.util.Utils.getInlineImagePreviewDisplayOptionInt;
+import static org.mariotaku.twidere.util.Utils.getMediaLinkPreviewImage;
 import static org.mariotaku.twidere.util.Utils.getNameDisplayOptionInt;
 import static org.mariotaku.twidere.util.Utils.getPreviewImage;
 import static org.mariotaku.twidere.util.Utils.getStatusBackground;
 import static org.mariotaku.twidere.util.Utils.getStatusTypeIconRes;
 import static org.mariotaku.twidere.util.Utils.getUserColor;
 import static org.mariotaku.twidere.util.Utils.getUserTypeIconRes;
+import static org.mariotaku.twidere.util.Utils.isMentioned;
 import static org.mariotaku.twidere.util.Utils.openImage;
 import static org.mariotaku.twidere.util.Utils.openUserProfile;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.mariotaku.twidere.R;
 import org.mariotaku.twidere.adapter.iface.IStatusesAdapter;
@@ -45,6 +49,7 @@ import org.mariotaku.twidere.model.ImageSpec;
 import org.mariotaku.twidere.model.ParcelableStatus;
 import org.mariotaku.twidere.model.PreviewImage;
 import org.mariotaku.twidere.model.StatusCursorIndices;
+import org.mariotaku.twidere.model.StatusRenderModel;
 import org.mariotaku.twidere.util.LazyImageLoader;
 import org.mariotaku.twidere.util.OnLinkClickHandler;
 import org.mariotaku.twidere.util.TwidereLinkify;
@@ -54,7 +59,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
 import android.database.Cursor;
-import android.net.Uri;
 import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.Html;
 import android.text.TextUtils;
@@ -66,6 +70,19 @@ import android.view.ViewGroup.MarginLayoutParams;
 
 public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatusesAdapter, OnClickListener {
 
+	private static final int RENDER_MODELS_CACHE_SIZE = 256;
+
+	private final Map<StatusRenderModel.Key, StatusRenderModel> mRenderModels = new LinkedHashMap<StatusRenderModel.Key, StatusRenderModel>(
+			RENDER_MODELS_CACHE_SIZE, 0.75f, true) {
+
+		private static final long serialVersionUID = 6395406012581004693L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<StatusRenderModel.Key, StatusRenderModel> eldest) {
+			return size() > RENDER_MODELS_CACHE_SIZE;
+		}
+	};
+
 	private final Context mContext;
 	private final Resources mResources;
 	private final LazyImageLoader mProfileImageLoader, mPreviewImageLoader;
@@ -108,11 +125,8 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 
 			final String retweeted_by_name = cursor.getString(mIndices.retweeted_by_name);
 			final String retweeted_by_screen_name = cursor.getString(mIndices.retweeted_by_screen_name);
-			final String text = cursor.getString(mIndices.text_html);
-			final String screen_name = cursor.getString(mIndices.screen_name);
-			final String name = cursor.getString(mIndices.name);
 			final String in_reply_to_screen_name = cursor.getString(mIndices.in_reply_to_screen_name);
-			final String account_screen_name = getAccountScreenName(mContext, account_id);
+			final StatusRenderModel model = getRenderModel(context, cursor, account_id, status_id);
 
 			final boolean is_favorite = cursor.getShort(mIndices.is_favorite) == 1;
 			final boolean is_protected = cursor.getShort(mIndices.is_protected) == 1;
@@ -123,7 +137,6 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 					&& cursor.getShort(mIndices.is_retweet) == 1;
 			final boolean is_reply = !TextUtils.isEmpty(in_reply_to_screen_name)
 					&& cursor.getLong(mIndices.in_reply_to_status_id) > 0;
-			final boolean is_mention = text.toLowerCase().contains('@' + account_screen_name.toLowerCase());
 			final boolean is_my_status = account_id == user_id;
 
 			if (mMultiSelectEnabled) {
@@ -133,8 +146,8 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 			}
 
 			holder.setUserColor(getUserColor(mContext, user_id));
-			if (text != null) {
-				holder.setHighlightColor(getStatusBackground(mMentionsHighlightDisabled ? false : is_mention,
+			if (model.text != null) {
+				holder.setHighlightColor(getStatusBackground(mMentionsHighlightDisabled ? false : model.is_mention,
 						is_favorite, is_retweet));
 			}
 
@@ -144,40 +157,32 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 				holder.setAccountColor(getAccountColor(mContext, account_id));
 			}
 
-			final PreviewImage preview = getPreviewImage(text, mInlineImagePreviewDisplayOption);
-			final boolean has_media = preview != null ? preview.has_image : false;
+			final PreviewImage preview = model.preview;
+			final boolean has_media = model.has_media;
 
 			holder.setTextSize(mTextSize);
 
 			holder.setIsMyStatus(is_my_status && !mIndicateMyStatusDisabled);
 
-			if (mLinkHighlightingEnabled) {
-				holder.text.setText(Html.fromHtml(text));
-				final TwidereLinkify linkify = new TwidereLinkify(holder.text);
-				linkify.setOnLinkClickListener(new OnLinkClickHandler(context, account_id));
-				linkify.addAllLinks();
-
-			} else {
-				holder.text.setText(toPlainText(text));
-			}
+			holder.text.setText(model.text);
 			holder.text.setMovementMethod(null);
 			holder.name.setCompoundDrawablesWithIntrinsicBounds(0, 0, getUserTypeIconRes(is_verified, is_protected), 0);
 			switch (mNameDisplayOption) {
 				case NAME_DISPLAY_OPTION_CODE_NAME: {
-					holder.name.setText(name);
+					holder.name.setText(model.name);
 					holder.screen_name.setText(null);
 					holder.screen_name.setVisibility(View.GONE);
 					break;
 				}
 				case NAME_DISPLAY_OPTION_CODE_SCREEN_NAME: {
-					holder.name.setText("@" + screen_name);
+					holder.name.setText(model.screen_name);
 					holder.screen_name.setText(null);
 					holder.screen_name.setVisibility(View.GONE);
 					break;
 				}
 				default: {
-					holder.name.setText(name);
-					holder.screen_name.setText("@" + screen_name);
+					holder.name.setText(model.name);
+					holder.screen_name.setText(model.screen_name);
 					holder.screen_name.setVisibility(View.VISIBLE);
 					break;
 				}
@@ -296,7 +301,8 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 			case R.id.image_preview_frame: {
 				final ImageSpec spec = getAllAvailableImage(status.image_orig_url_string);
 				if (spec != null) {
-					openImage(mContext, Uri.parse(spec.full_image_link), status.is_possibly_sensitive);
+					openImage(mContext, spec.full_image_link, status.image_preview_url_string,
+							status.is_possibly_sensitive);
 				}
 				break;
 			}
@@ -346,7 +352,7 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 	public void setInlineImagePreviewDisplayOption(final String option) {
 		if (option != null && !option.equals(mInlineImagePreviewDisplayOption)) {
 			mInlineImagePreviewDisplayOption = getInlineImagePreviewDisplayOptionInt(option);
-			;
+			mRenderModels.clear();
 			notifyDataSetChanged();
 		}
 	}
@@ -355,6 +361,7 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 	public void setLinkHightlightingEnabled(final boolean enable) {
 		if (mLinkHighlightingEnabled != enable) {
 			mLinkHighlightingEnabled = enable;
+			mRenderModels.clear();
 			notifyDataSetChanged();
 		}
 	}
@@ -406,6 +413,10 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 
 	@Override
 	public Cursor swapCursor(final Cursor cursor) {
+		// Names and mentions may have changed since models were built.
+		if (cursor != getCursor()) {
+			mRenderModels.clear();
+		}
 		if (cursor != null) {
 			mIndices = new StatusCursorIndices(cursor);
 		} else {
@@ -414,4 +425,36 @@ public class CursorStatusesAdapter extends SimpleCursorAdapter implements IStatu
 		return super.swapCursor(cursor);
 	}
 
+	private StatusRenderModel getRenderModel(final Context context, final Cursor cursor, final long account_id,
+			final long status_id) {
+		final StatusRenderModel.Key key = new StatusRenderModel.Key(account_id, status_id);
+		final StatusRenderModel cached = mRenderModels.get(key);
+		if (cached != null) return cached;
+		final String text = cursor.getString(mIndices.text_html);
+		final String account_screen_name = getAccountScreenName(mContext, account_id);
+		final boolean is_mention;
+		if (mIndices.user_mentions != -1) {
+			is_mention = isMentioned(cursor.getString(mIndices.user_mentions), account_screen_name);
+		} else {
+			is_mention = text != null && account_screen_name != null
+					&& text.toLowerCase().contains('@' + account_screen_name.toLowerCase());
+		}
+		final CharSequence display_text;
+		if (text == null) {
+			display_text = null;
+		} else if (mLinkHighlightingEnabled) {
+			final TwidereLinkify linkify = new TwidereLinkify(new OnLinkClickHandler(context, account_id));
+			display_text = linkify.getLinkifiedText(Html.fromHtml(text));
+		} else {
+			display_text = toPlainText(text);
+		}
+		final PreviewImage preview = mIndices.media_link != -1 ? getMediaLinkPreviewImage(
+				cursor.getString(mIndices.media_link), mInlineImagePreviewDisplayOption) : getPreviewImage(text,
+				mInlineImagePreviewDisplayOption);
+		final StatusRenderModel model = new StatusRenderModel(display_text, preview, is_mention,
+				cursor.getString(mIndices.name), "@" + cursor.getString(mIndices.screen_name));
+		mRenderModels.put(key, model);
+		return model;
+	}
+
 }
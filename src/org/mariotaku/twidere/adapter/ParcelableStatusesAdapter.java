@@ -48,7 +48,6 @@ import org.mariotaku.twidere.view.holder.StatusViewHolder;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
-import android.net.Uri;
 import android.text.TextUtils;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -252,7 +251,8 @@ public class ParcelableStatusesAdapter extends ArrayAdapter<ParcelableStatus> im
 			case R.id.image_preview_frame: {
 				final ImageSpec spec = getAllAvailableImage(status.image_orig_url_string);
 				if (spec != null) {
-					openImage(mContext, Uri.parse(spec.full_image_link), status.is_possibly_sensitive);
+					openImage(mContext, spec.full_image_link, status.image_preview_url_string,
+							status.is_possibly_sensitive);
 				}
 				break;
 			}
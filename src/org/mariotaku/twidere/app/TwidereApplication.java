@@ -19,7 +19,7 @@
 
 package org.mariotaku.twidere.app;
 
-import static org.mariotaku.twidere.util.Utils.getBestCacheDir;
+import static org.mariotaku.twidere.util.Utils.clearTwitterInstances;
 import static org.mariotaku.twidere.util.Utils.hasActiveConnection;
 
 import java.io.File;
@@ -28,7 +28,6 @@ import java.util.ArrayList;
 import org.mariotaku.gallery3d.app.IGalleryApplication;
 import org.mariotaku.gallery3d.data.DataManager;
 import org.mariotaku.gallery3d.data.DownloadCache;
-import org.mariotaku.gallery3d.util.GalleryUtils;
 import org.mariotaku.gallery3d.util.ThreadPool;
 import org.mariotaku.twidere.Constants;
 import org.mariotaku.twidere.R;
@@ -38,10 +37,14 @@ import org.mariotaku.twidere.service.RefreshService;
 import org.mariotaku.twidere.util.AsyncTaskManager;
 import org.mariotaku.twidere.util.AsyncTwitterWrapper;
 import org.mariotaku.twidere.util.DatabaseHelper;
+import org.mariotaku.twidere.util.EnvironmentAccessor;
 import org.mariotaku.twidere.util.ImageLoaderUtils;
 import org.mariotaku.twidere.util.LazyImageLoader;
+import org.mariotaku.twidere.util.MediaCache;
 import org.mariotaku.twidere.util.NoDuplicatesLinkedList;
+import org.mariotaku.twidere.util.StatusFilter;
 import org.mariotaku.twidere.util.TwidereHostAddressResolver;
+import org.mariotaku.twidere.util.WebSettingsAccessor;
 
 import twitter4j.http.HostAddressResolver;
 import android.app.Application;
@@ -51,15 +54,28 @@ import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue.IdleHandler;
+import android.os.Process;
+import android.util.TimingLogger;
 import android.webkit.WebView;
 import edu.ucdavis.earlybird.UCDService;
 
 public class TwidereApplication extends Application implements Constants, OnSharedPreferenceChangeListener,
 		IGalleryApplication {
 
-	private static final String DOWNLOAD_FOLDER = "download";
-	private static final long DOWNLOAD_CAPACITY = 64 * 1024 * 1024; // 64M
+	private static final long MEDIA_CACHE_CAPACITY = 128 * 1024 * 1024; // 128M
+	private static final String LEGACY_DOWNLOAD_DATABASE = "download.db";
+	private static final String[] LEGACY_CACHE_DIRS = { DIR_NAME_PROFILE_IMAGES, DIR_NAME_CACHED_THUMBNAILS,
+			"download" };
+
+	/**
+	 * Startup timings are logged with this tag, enable them with
+	 * "adb shell setprop log.tag.TwidereStartup VERBOSE".
+	 */
+	private static final String LOGTAG_STARTUP = "TwidereStartup";
 
 	private LazyImageLoader mProfileImageLoader, mPreviewImageLoader;
 	private AsyncTaskManager mAsyncTaskManager;
@@ -70,13 +86,15 @@ public class TwidereApplication extends Application implements Constants, OnShar
 	private DataManager mDataManager;
 	private ThreadPool mThreadPool;
 	private DownloadCache mDownloadCache;
+	private MediaCache mMediaCache;
 	private SQLiteDatabase mDatabase;
 
 	private Handler mHandler;
 
-	private String mBrowserUserAgent;
+	private volatile String mBrowserUserAgent;
 	private boolean mMultiSelectActive;
 
+	private final Object mDatabaseLock = new Object(), mUserAgentLock = new Object();
 	private final ItemsList mSelectedItems = new ItemsList();
 	private final ArrayList<Long> mSelectedStatusIds = new ArrayList<Long>();
 	private final ArrayList<Long> mSelectedUserIds = new ArrayList<Long>();
@@ -91,8 +109,16 @@ public class TwidereApplication extends Application implements Constants, OnShar
 		return mAsyncTaskManager = AsyncTaskManager.getInstance();
 	}
 
+	/**
+	 * Returns user agent of browser. It's read from preferences if device
+	 * isn't updated since last time, otherwise WebView is needed to resolve
+	 * it, and system default one is returned if called off the UI thread.
+	 */
 	public String getBrowserUserAgent() {
-		return mBrowserUserAgent;
+		final String user_agent = mBrowserUserAgent;
+		if (user_agent != null) return user_agent;
+		final String resolved = resolveBrowserUserAgent(Looper.myLooper() == Looper.getMainLooper());
+		return resolved != null ? resolved : System.getProperty("http.agent");
 	}
 
 	@Override
@@ -106,14 +132,7 @@ public class TwidereApplication extends Application implements Constants, OnShar
 	@Override
 	public synchronized DownloadCache getDownloadCache() {
 		if (mDownloadCache == null) {
-			final File cacheDir = getBestCacheDir(this, DOWNLOAD_FOLDER);
-
-			if (!cacheDir.isDirectory()) {
-				cacheDir.mkdirs();
-			}
-
-			if (!cacheDir.isDirectory()) throw new RuntimeException("fail to create: " + cacheDir.getAbsolutePath());
-			mDownloadCache = new DownloadCache(this, cacheDir, DOWNLOAD_CAPACITY);
+			mDownloadCache = new DownloadCache(this, getMediaCache());
 		}
 		return mDownloadCache;
 	}
@@ -127,20 +146,29 @@ public class TwidereApplication extends Application implements Constants, OnShar
 		return mResolver = new TwidereHostAddressResolver(this);
 	}
 
-	public LazyImageLoader getPreviewImageLoader() {
+	/**
+	 * Returns cache of downloaded media, shared by image loaders and image
+	 * viewers.
+	 */
+	public synchronized MediaCache getMediaCache() {
+		if (mMediaCache != null) return mMediaCache;
+		return mMediaCache = new MediaCache(this, MEDIA_CACHE_CAPACITY);
+	}
+
+	public synchronized LazyImageLoader getPreviewImageLoader() {
 		if (mPreviewImageLoader != null) return mPreviewImageLoader;
 		final int mem = ImageLoaderUtils.getMemoryClass(this);
 		final int preview_image_size = getResources().getDimensionPixelSize(R.dimen.image_preview_preferred_width);
-		return mPreviewImageLoader = new LazyImageLoader(this, DIR_NAME_CACHED_THUMBNAILS, 0, preview_image_size,
-				preview_image_size, mem / 4);
+		return mPreviewImageLoader = new LazyImageLoader(this, getMediaCache(), 0, preview_image_size,
+				preview_image_size, mem * 1024 * 1024 / 8);
 	}
 
-	public LazyImageLoader getProfileImageLoader() {
+	public synchronized LazyImageLoader getProfileImageLoader() {
 		if (mProfileImageLoader != null) return mProfileImageLoader;
 		final int mem = ImageLoaderUtils.getMemoryClass(this);
 		final int profile_image_size = getResources().getDimensionPixelSize(R.dimen.profile_image_size);
-		return mProfileImageLoader = new LazyImageLoader(this, DIR_NAME_PROFILE_IMAGES,
-				R.drawable.ic_profile_image_default, profile_image_size, profile_image_size, mem);
+		return mProfileImageLoader = new LazyImageLoader(this, getMediaCache(), R.drawable.ic_profile_image_default,
+				profile_image_size, profile_image_size, mem * 1024 * 1024 / 16);
 	}
 
 	public ItemsList getSelectedItems() {
@@ -156,8 +184,12 @@ public class TwidereApplication extends Application implements Constants, OnShar
 	}
 
 	public SQLiteDatabase getSQLiteDatabase() {
-		if (mDatabase != null) return mDatabase;
-		return mDatabase = new DatabaseHelper(this, DATABASES_NAME, DATABASES_VERSION).getWritableDatabase();
+		// Opening or upgrading database may take long, don't block other
+		// getters on it.
+		synchronized (mDatabaseLock) {
+			if (mDatabase != null) return mDatabase;
+			return mDatabase = new DatabaseHelper(this, DATABASES_NAME, DATABASES_VERSION).getWritableDatabase();
+		}
 	}
 
 	@Override
@@ -180,22 +212,41 @@ public class TwidereApplication extends Application implements Constants, OnShar
 		return mMultiSelectActive;
 	}
 
+	/**
+	 * Only does what first activity needs, other initialization is done
+	 * when UI thread becomes idle (see {@link #onStartupIdle()}), and in
+	 * background (see {@link #onStartupWarmUp()}).
+	 */
 	@Override
 	public void onCreate() {
+		final TimingLogger timings = new TimingLogger(LOGTAG_STARTUP, "onCreate");
 		mPreferences = getSharedPreferences(SHARED_PREFERENCES_NAME, MODE_PRIVATE);
 		mHandler = new Handler();
 		mPreferences.registerOnSharedPreferenceChangeListener(this);
 		super.onCreate();
+		timings.addSplit("preferences");
 		initializeAsyncTask();
-		GalleryUtils.initialize(this);
 		mTwitterWrapper = AsyncTwitterWrapper.getInstance(this);
-		mBrowserUserAgent = new WebView(this).getSettings().getUserAgentString();
-		if (mPreferences.getBoolean(PREFERENCE_KEY_UCD_DATA_PROFILING, false)) {
-			startService(new Intent(this, UCDService.class));
-		}
-		if (mPreferences.getBoolean(PREFERENCE_KEY_AUTO_REFRESH, false)) {
-			startService(new Intent(this, RefreshService.class));
-		}
+		timings.addSplit("twitter wrapper");
+		final Thread warm_up = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				onStartupWarmUp();
+			}
+		}, "StartupWarmUp");
+		warm_up.start();
+		Looper.myQueue().addIdleHandler(new IdleHandler() {
+
+			@Override
+			public boolean queueIdle() {
+				onStartupIdle();
+				return false;
+			}
+		});
+		timings.addSplit("schedule deferred");
+		timings.dumpToLog();
 	}
 
 	@Override
@@ -217,7 +268,10 @@ public class TwidereApplication extends Application implements Constants, OnShar
 			if (preferences.getBoolean(PREFERENCE_KEY_AUTO_REFRESH, false) && hasActiveConnection(this)) {
 				startService(intent);
 			}
-		} else if (PREFERENCE_KEY_ENABLE_PROXY.equals(key) || PREFERENCE_KEY_CONNECTION_TIMEOUT.equals(key)) {
+		} else if (PREFERENCE_KEY_ENABLE_PROXY.equals(key) || PREFERENCE_KEY_CONNECTION_TIMEOUT.equals(key)
+				|| PREFERENCE_KEY_PROXY_HOST.equals(key) || PREFERENCE_KEY_PROXY_PORT.equals(key)
+				|| PREFERENCE_KEY_GZIP_COMPRESSING.equals(key) || PREFERENCE_KEY_IGNORE_SSL_ERROR.equals(key)
+				|| PREFERENCE_KEY_CONSUMER_KEY.equals(key) || PREFERENCE_KEY_CONSUMER_SECRET.equals(key)) {
 			reloadConnectivitySettings();
 		} else if (PREFERENCE_KEY_UCD_DATA_PROFILING.equals(key)) {
 			final Intent intent = new Intent(this, UCDService.class);
@@ -230,12 +284,8 @@ public class TwidereApplication extends Application implements Constants, OnShar
 	}
 
 	public void reloadConnectivitySettings() {
-		if (mPreviewImageLoader != null) {
-			mPreviewImageLoader.reloadConnectivitySettings();
-		}
-		if (mProfileImageLoader != null) {
-			mProfileImageLoader.reloadConnectivitySettings();
-		}
+		clearTwitterInstances();
+		reloadImageLoadersConnectivitySettings();
 	}
 
 	public void startMultiSelect() {
@@ -253,6 +303,34 @@ public class TwidereApplication extends Application implements Constants, OnShar
 		sendBroadcast(intent);
 	}
 
+	/**
+	 * Removes files of caches used before {@link MediaCache}, only once.
+	 */
+	private void deleteLegacyCaches() {
+		if (mPreferences.getBoolean(PREFERENCE_KEY_LEGACY_CACHES_DELETED, false)) return;
+		final File[] cache_dirs = { EnvironmentAccessor.getExternalCacheDir(this), getCacheDir() };
+		for (final File cache_dir : cache_dirs) {
+			if (cache_dir == null) {
+				continue;
+			}
+			for (final String name : LEGACY_CACHE_DIRS) {
+				final File dir = new File(cache_dir, name);
+				final File[] files = dir.listFiles();
+				if (files == null) {
+					continue;
+				}
+				for (final File file : files) {
+					file.delete();
+				}
+				dir.delete();
+			}
+		}
+		deleteDatabase(LEGACY_DOWNLOAD_DATABASE);
+		final SharedPreferences.Editor editor = mPreferences.edit();
+		editor.putBoolean(PREFERENCE_KEY_LEGACY_CACHES_DELETED, true);
+		editor.commit();
+	}
+
 	private void initializeAsyncTask() {
 		// AsyncTask class needs to be loaded in UI thread.
 		// So we load it here to comply the rule.
@@ -262,6 +340,80 @@ public class TwidereApplication extends Application implements Constants, OnShar
 		}
 	}
 
+	/**
+	 * Runs on UI thread once it's idle, usually after first activity is
+	 * drawn.
+	 */
+	private void onStartupIdle() {
+		final TimingLogger timings = new TimingLogger(LOGTAG_STARTUP, "onStartupIdle");
+		if (mPreferences.getBoolean(PREFERENCE_KEY_UCD_DATA_PROFILING, false)) {
+			startService(new Intent(this, UCDService.class));
+		}
+		if (mPreferences.getBoolean(PREFERENCE_KEY_AUTO_REFRESH, false)) {
+			startService(new Intent(this, RefreshService.class));
+		}
+		timings.addSplit("services");
+		if (mBrowserUserAgent == null) {
+			resolveBrowserUserAgent(true);
+			// Image loaders may be created with fallback user agent.
+			reloadImageLoadersConnectivitySettings();
+			timings.addSplit("user agent");
+		}
+		timings.dumpToLog();
+	}
+
+	/**
+	 * Opens database and loads caches, so they are ready when UI needs them.
+	 */
+	private void onStartupWarmUp() {
+		final TimingLogger timings = new TimingLogger(LOGTAG_STARTUP, "onStartupWarmUp");
+		final SQLiteDatabase database = getSQLiteDatabase();
+		timings.addSplit("database");
+		StatusFilter.getInstance(database);
+		timings.addSplit("status filter");
+		getMediaCache().preload();
+		timings.addSplit("media cache");
+		deleteLegacyCaches();
+		timings.addSplit("legacy caches");
+		timings.dumpToLog();
+	}
+
+	private synchronized void reloadImageLoadersConnectivitySettings() {
+		if (mPreviewImageLoader != null) {
+			mPreviewImageLoader.reloadConnectivitySettings();
+		}
+		if (mProfileImageLoader != null) {
+			mProfileImageLoader.reloadConnectivitySettings();
+		}
+	}
+
+	/**
+	 * @param use_webview Whether WebView can be created, it must be false if
+	 *            not called from UI thread.
+	 * @return User agent, or null if WebView is needed to resolve it.
+	 */
+	private String resolveBrowserUserAgent(final boolean use_webview) {
+		synchronized (mUserAgentLock) {
+			if (mBrowserUserAgent != null) return mBrowserUserAgent;
+			// User agent only changes with system updates.
+			final String fingerprint = Build.FINGERPRINT;
+			if (fingerprint.equals(mPreferences.getString(PREFERENCE_KEY_BROWSER_USER_AGENT_FINGERPRINT, null))) {
+				final String user_agent = mPreferences.getString(PREFERENCE_KEY_BROWSER_USER_AGENT, null);
+				if (user_agent != null) return mBrowserUserAgent = user_agent;
+			}
+			String user_agent = WebSettingsAccessor.getDefaultUserAgent(this);
+			if (user_agent == null) {
+				if (!use_webview) return null;
+				user_agent = new WebView(this).getSettings().getUserAgentString();
+			}
+			final SharedPreferences.Editor editor = mPreferences.edit();
+			editor.putString(PREFERENCE_KEY_BROWSER_USER_AGENT, user_agent);
+			editor.putString(PREFERENCE_KEY_BROWSER_USER_AGENT_FINGERPRINT, fingerprint);
+			editor.commit();
+			return mBrowserUserAgent = user_agent;
+		}
+	}
+
 	public static TwidereApplication getInstance(final Context context) {
 		return context != null ? (TwidereApplication) context.getApplicationContext() : null;
 	}
@@ -34,12 +34,14 @@ import org.mariotaku.twidere.model.Account;
 import org.mariotaku.twidere.model.Panes;
 import org.mariotaku.twidere.model.ParcelableDirectMessage;
 import org.mariotaku.twidere.provider.TweetStore.DirectMessages;
+import org.mariotaku.twidere.util.AsyncTask;
 import org.mariotaku.twidere.util.AsyncTwitterWrapper;
 import org.mariotaku.twidere.util.ClipboardUtils;
 import org.mariotaku.twidere.util.LazyImageLoader;
 import org.mariotaku.twidere.view.holder.DirectMessageConversationViewHolder;
 
 import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -61,6 +63,8 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemLongClickListener;
@@ -81,7 +85,13 @@ import com.twitter.Validator;
 
 public class DirectMessagesConversationFragment extends BaseListFragment implements LoaderCallbacks<Cursor>,
 		OnItemClickListener, OnItemLongClickListener, OnMenuItemClickListener, TextWatcher, OnClickListener,
-		Panes.Right, OnItemSelectedListener, OnEditorActionListener {
+		Panes.Right, OnItemSelectedListener, OnEditorActionListener, OnScrollListener {
+
+	/**
+	 * Messages are loaded a page at a time, older pages are loaded when the
+	 * list is scrolled to top.
+	 */
+	private static final int MESSAGES_PAGE_SIZE = 50;
 
 	private final Validator mValidator = new Validator();
 	private AsyncTwitterWrapper mTwitterWrapper;
@@ -106,6 +116,13 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 	private AutoCompleteAdapter mUserAutoCompleteAdapter;
 	private AccountsAdapter mAccountsAdapter;
 
+	/**
+	 * Message id of the oldest loaded message, messages not older than it are
+	 * loaded, or only the latest page if it's not greater than 0.
+	 */
+	private long mOldestMessageId = -1;
+	private boolean mHasOlderMessages, mLoadingOlderMessages, mOlderMessagesLoaded;
+
 	private final BroadcastReceiver mStatusReceiver = new BroadcastReceiver() {
 
 		@Override
@@ -170,6 +187,7 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 		mListView.setStackFromBottom(true);
 		mListView.setOnItemClickListener(this);
 		mListView.setOnItemLongClickListener(this);
+		mListView.setOnScrollListener(this);
 		final Bundle args = savedInstanceState == null ? getArguments() : savedInstanceState.getBundle(INTENT_KEY_DATA);
 		if (args != null) {
 			mArguments.putAll(args);
@@ -215,6 +233,7 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 				final String screen_name = text.toString();
 				mArguments.putString(INTENT_KEY_SCREEN_NAME, screen_name);
 				mArguments.putLong(INTENT_KEY_ACCOUNT_ID, mSelectedAccount.account_id);
+				resetPaging();
 				setListShownNoAnimation(false);
 				getLoaderManager().restartLoader(0, mArguments, this);
 				break;
@@ -242,8 +261,15 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 		mScreenNameContainer
 				.setVisibility(account_id <= 0 || conversation_id <= 0 && isEmpty(screen_name) ? View.VISIBLE
 						: View.GONE);
-		final Uri uri = buildDirectMessageConversationUri(account_id, conversation_id, screen_name);
-		return new CursorLoader(getActivity(), uri, cols, null, null, DirectMessages.Conversation.DEFAULT_SORT_ORDER);
+		final Uri.Builder builder = buildDirectMessageConversationUri(account_id, conversation_id, screen_name)
+				.buildUpon();
+		if (mOldestMessageId > 0) {
+			builder.appendQueryParameter(QUERY_PARAM_MIN_ID, String.valueOf(mOldestMessageId));
+		} else {
+			builder.appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(MESSAGES_PAGE_SIZE));
+		}
+		return new CursorLoader(getActivity(), builder.build(), cols, null, null,
+				DirectMessages.Conversation.DEFAULT_SORT_ORDER);
 	}
 
 	@Override
@@ -320,7 +346,22 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 
 	@Override
 	public void onLoadFinished(final Loader<Cursor> loader, final Cursor cursor) {
+		final int old_count = mAdapter.getCount();
+		final int first_position = mListView.getFirstVisiblePosition();
+		final View first_view = mListView.getChildAt(0);
+		final int first_top = first_view != null ? first_view.getTop() : 0;
 		mAdapter.swapCursor(cursor);
+		if (cursor != null && cursor.moveToFirst()) {
+			if (mOldestMessageId <= 0) {
+				mHasOlderMessages = cursor.getCount() >= MESSAGES_PAGE_SIZE;
+			}
+			mOldestMessageId = cursor.getLong(cursor.getColumnIndex(DirectMessages.MESSAGE_ID));
+		}
+		if (mOlderMessagesLoaded) {
+			// Keeps messages in place, older ones are inserted above them.
+			mOlderMessagesLoaded = false;
+			mListView.setSelectionFromTop(first_position + mAdapter.getCount() - old_count, first_top);
+		}
 		setListShown(true);
 	}
 
@@ -358,6 +399,20 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 
 	}
 
+	@Override
+	public void onScroll(final AbsListView view, final int firstVisibleItem, final int visibleItemCount,
+			final int totalItemCount) {
+		if (firstVisibleItem == 0 && totalItemCount > visibleItemCount && mHasOlderMessages
+				&& !mLoadingOlderMessages) {
+			loadOlderMessages();
+		}
+	}
+
+	@Override
+	public void onScrollStateChanged(final AbsListView view, final int scrollState) {
+
+	}
+
 	@Override
 	public void onSaveInstanceState(final Bundle outState) {
 		if (mEditText != null) {
@@ -406,9 +461,59 @@ public class DirectMessagesConversationFragment extends BaseListFragment impleme
 		final Bundle args = new Bundle();
 		args.putLong(INTENT_KEY_ACCOUNT_ID, account_id);
 		args.putLong(INTENT_KEY_CONVERSATION_ID, conversation_id);
+		resetPaging();
 		getLoaderManager().restartLoader(0, args, this);
 	}
 
+	/**
+	 * Finds the oldest message of the page before loaded messages, then loads
+	 * messages again from it.
+	 */
+	private void loadOlderMessages() {
+		final long account_id = mArguments.getLong(INTENT_KEY_ACCOUNT_ID, -1);
+		final long conversation_id = mArguments.getLong(INTENT_KEY_CONVERSATION_ID, -1);
+		final String screen_name = mArguments.getString(INTENT_KEY_SCREEN_NAME);
+		final Uri uri = buildDirectMessageConversationUri(account_id, conversation_id, screen_name).buildUpon()
+				.appendQueryParameter(QUERY_PARAM_MAX_ID, String.valueOf(mOldestMessageId))
+				.appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(MESSAGES_PAGE_SIZE)).build();
+		final ContentResolver resolver = getContentResolver();
+		mLoadingOlderMessages = true;
+		new AsyncTask<Void, Void, long[]>() {
+
+			@Override
+			protected long[] doInBackground(final Void... params) {
+				final String[] cols = new String[] { DirectMessages.MESSAGE_ID };
+				final Cursor cur = resolver.query(uri, cols, null, null, DirectMessages.MESSAGE_ID + " ASC");
+				if (cur == null) return null;
+				try {
+					if (!cur.moveToFirst()) return new long[] { -1, 0 };
+					return new long[] { cur.getLong(0), cur.getCount() };
+				} finally {
+					cur.close();
+				}
+			}
+
+			@Override
+			protected void onPostExecute(final long[] result) {
+				mLoadingOlderMessages = false;
+				if (getActivity() == null || result == null) return;
+				mHasOlderMessages = result[1] >= MESSAGES_PAGE_SIZE;
+				if (result[0] > 0) {
+					mOldestMessageId = result[0];
+					mOlderMessagesLoaded = true;
+					getLoaderManager().restartLoader(0, mArguments, DirectMessagesConversationFragment.this);
+				}
+			}
+
+		}.execute();
+	}
+
+	private void resetPaging() {
+		mOldestMessageId = -1;
+		mHasOlderMessages = false;
+		mOlderMessagesLoaded = false;
+	}
+
 	private void send() {
 		final Editable text = mEditText.getText();
 		if (isEmpty(text)) return;
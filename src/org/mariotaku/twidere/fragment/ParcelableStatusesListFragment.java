@@ -23,8 +23,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.mariotaku.twidere.adapter.ParcelableStatusesAdapter;
+import org.mariotaku.twidere.app.TwidereApplication;
 import org.mariotaku.twidere.loader.ParcelableStatusesLoader;
 import org.mariotaku.twidere.model.ParcelableStatus;
+import org.mariotaku.twidere.util.StatusFilter;
 import org.mariotaku.twidere.util.SynchronizedStateSavedList;
 
 import android.content.BroadcastReceiver;
@@ -66,6 +68,8 @@ public abstract class ParcelableStatusesListFragment extends
 				final long account_id = args != null ? args.getLong(INTENT_KEY_ACCOUNT_ID, -1) : -1;
 				if (account_id <= 0) return;
 				getStatuses(new long[] { account_id }, null, null);
+			} else if (BROADCAST_FILTERS_UPDATED.equals(action)) {
+				removeFilteredStatuses();
 			}
 
 		}
@@ -84,6 +88,26 @@ public abstract class ParcelableStatusesListFragment extends
 		mAdapter.setData(mData);
 	}
 
+	/**
+	 * Loaders only check statuses they loaded, so statuses already shown are
+	 * checked here when filters changed. Filters snapshot is reloaded by the
+	 * provider before the broadcast is sent, so this won't hit database.
+	 */
+	public final void removeFilteredStatuses() {
+		if (mData == null || mData.isEmpty()) return;
+		final StatusFilter filter = StatusFilter.getInstance(TwidereApplication.getInstance(getActivity())
+				.getSQLiteDatabase());
+		final ArrayList<ParcelableStatus> data_to_remove = new ArrayList<ParcelableStatus>();
+		for (final ParcelableStatus status : mData) {
+			if (!status.is_gap && filter.isFiltered(status)) {
+				data_to_remove.add(status);
+			}
+		}
+		if (data_to_remove.isEmpty()) return;
+		mData.removeAll(data_to_remove);
+		mAdapter.setData(mData);
+	}
+
 	@Override
 	public final ParcelableStatusesAdapter getListAdapter() {
 		return mAdapter;
@@ -205,6 +229,7 @@ public abstract class ParcelableStatusesListFragment extends
 		super.onStart();
 		final IntentFilter filter = new IntentFilter(BROADCAST_STATUS_DESTROYED);
 		filter.addAction(BROADCAST_RETWEET_CHANGED);
+		filter.addAction(BROADCAST_FILTERS_UPDATED);
 		registerReceiver(mStateReceiver, filter);
 	}
 
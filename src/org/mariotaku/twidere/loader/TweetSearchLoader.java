@@ -21,7 +21,6 @@ package org.mariotaku.twidere.loader;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 
@@ -63,18 +62,16 @@ public class TweetSearchLoader extends Twitter4JStatusLoader {
 			try {
 				final String path = SerializationUtil.getSerializationFilePath(getContext(), getClassName(),
 						mAccountId, mQuery);
-				final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = SerializationUtil.read(path);
+				final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = SerializationUtil
+						.readStatuses(path);
 				setLastViewedId(statuses.getState());
 				final SynchronizedStateSavedList<ParcelableStatus, Long> data = getData();
 				if (data != null && statuses != null) {
 					data.addAll(statuses);
 				}
-				Collections.sort(data);
 				return data;
 			} catch (final IOException e) {
 			} catch (final ConcurrentModificationException e) {
-			} catch (final ClassNotFoundException e) {
-			} catch (final ClassCastException e) {
 			}
 		}
 		return super.loadInBackground();
@@ -91,14 +88,10 @@ public class TweetSearchLoader extends Twitter4JStatusLoader {
 				PREFERENCE_KEY_DATABASE_ITEM_LIMIT, PREFERENCE_DEFAULT_DATABASE_ITEM_LIMIT);
 		try {
 			final int size = data.size();
-			final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = new SynchronizedStateSavedList<ParcelableStatus, Long>(
-					data.subList(0, size > items_limit ? items_limit : size));
-			if (last_viewed_id > 0) {
-				statuses.setState(last_viewed_id);
-			}
+			final List<ParcelableStatus> statuses = data.subList(0, size > items_limit ? items_limit : size);
 			final String path = SerializationUtil.getSerializationFilePath(context,
 					instance.getClass().getSimpleName(), account_id, query);
-			SerializationUtil.write(statuses, path);
+			SerializationUtil.writeStatuses(statuses, last_viewed_id > 0 ? last_viewed_id : null, path);
 		} catch (final IOException e) {
 		} catch (final ArrayIndexOutOfBoundsException e) {
 		}
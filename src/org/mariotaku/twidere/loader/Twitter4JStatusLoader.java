@@ -20,28 +20,24 @@
 package org.mariotaku.twidere.loader;
 
 import static org.mariotaku.twidere.util.Utils.getInlineImagePreviewDisplayOptionInt;
-import static org.mariotaku.twidere.util.Utils.isFiltered;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.ConcurrentModificationException;
 import java.util.List;
 
 import org.mariotaku.twidere.R;
 import org.mariotaku.twidere.app.TwidereApplication;
 import org.mariotaku.twidere.model.ParcelableStatus;
 import org.mariotaku.twidere.util.CacheUsersStatusesTask;
+import org.mariotaku.twidere.util.StatusFilter;
 import org.mariotaku.twidere.util.SynchronizedStateSavedList;
 import org.mariotaku.twidere.util.TwitterWrapper.StatusListResponse;
 
 import twitter4j.Paging;
 import twitter4j.Status;
 import twitter4j.TwitterException;
-import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
 
 public abstract class Twitter4JStatusLoader extends ParcelableStatusesLoader {
 
@@ -87,28 +83,19 @@ public abstract class Twitter4JStatusLoader extends ParcelableStatusesLoader {
 			final boolean insert_gap = load_item_limit == statuses.size() && data.size() > 0;
 			final Status min_status = statuses.size() > 0 ? Collections.min(statuses) : null;
 			final long min_status_id = min_status != null ? min_status.getId() : -1;
-			if (context instanceof Activity) {
-				((Activity) context).runOnUiThread(CacheUsersStatusesTask.getRunnable(context, new StatusListResponse(
-						mAccountId, statuses)));
-			}
+			new CacheUsersStatusesTask(context, new StatusListResponse(mAccountId, statuses)).execute();
+			// Statuses loaded before were checked already, only new ones
+			// need to be checked here.
+			final StatusFilter filter = StatusFilter.getInstance(mDatabase);
 			for (final Status status : statuses) {
 				final long id = status.getId();
 				deleteStatus(id);
-				data.add(new ParcelableStatus(status, mAccountId, min_status_id > 0 && min_status_id == id
-						&& insert_gap, mHiResProfileImage, mLargeInlineImagePreview));
-			}
-		}
-		try {
-			final List<ParcelableStatus> statuses_to_remove = new ArrayList<ParcelableStatus>();
-			for (final ParcelableStatus status : data) {
-				if (isFiltered(mDatabase, status) && !status.is_gap) {
-					statuses_to_remove.add(status);
+				final ParcelableStatus item = new ParcelableStatus(status, mAccountId, min_status_id > 0
+						&& min_status_id == id && insert_gap, mHiResProfileImage, mLargeInlineImagePreview);
+				if (item.is_gap || !filter.isFiltered(item)) {
+					data.add(item);
 				}
 			}
-			data.removeAll(statuses_to_remove);
-			Collections.sort(data);
-		} catch (final ConcurrentModificationException e) {
-			Log.w(LOGTAG, e);
 		}
 		return data;
 	}
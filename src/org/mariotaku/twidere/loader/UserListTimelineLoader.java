@@ -22,7 +22,6 @@ package org.mariotaku.twidere.loader;
 import static org.mariotaku.twidere.util.Utils.findUserList;
 
 import java.io.IOException;
-import java.util.Collections;
 import java.util.List;
 
 import org.mariotaku.twidere.model.ParcelableStatus;
@@ -73,17 +72,15 @@ public class UserListTimelineLoader extends Twitter4JStatusLoader {
 			try {
 				final String path = SerializationUtil.getSerializationFilePath(mContext, getClassName(), mAccountId,
 						mListId, mUserId, mScreenName, mListName);
-				final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = SerializationUtil.read(path);
+				final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = SerializationUtil
+						.readStatuses(path);
 				setLastViewedId(statuses.getState());
 				final SynchronizedStateSavedList<ParcelableStatus, Long> data = getData();
 				if (data != null && statuses != null) {
 					data.addAll(statuses);
-					Collections.sort(data);
 				}
 				return data;
 			} catch (final IOException e) {
-			} catch (final ClassNotFoundException e) {
-			} catch (final ClassCastException e) {
 			}
 		}
 		return super.loadInBackground();
@@ -101,14 +98,10 @@ public class UserListTimelineLoader extends Twitter4JStatusLoader {
 				PREFERENCE_KEY_DATABASE_ITEM_LIMIT, PREFERENCE_DEFAULT_DATABASE_ITEM_LIMIT);
 		try {
 			final int size = data.size();
-			final SynchronizedStateSavedList<ParcelableStatus, Long> statuses = new SynchronizedStateSavedList<ParcelableStatus, Long>(
-					data.subList(0, size > items_limit ? items_limit : size));
-			if (last_viewed_id > 0) {
-				statuses.setState(last_viewed_id);
-			}
+			final List<ParcelableStatus> statuses = data.subList(0, size > items_limit ? items_limit : size);
 			final String path = SerializationUtil.getSerializationFilePath(context,
 					instance.getClass().getSimpleName(), account_id, list_id, user_id, screen_name, list_name);
-			SerializationUtil.write(statuses, path);
+			SerializationUtil.writeStatuses(statuses, last_viewed_id > 0 ? last_viewed_id : null, path);
 		} catch (final IOException e) {
 		}
 	}
@@ -20,15 +20,21 @@
 package org.mariotaku.twidere.model;
 
 import static org.mariotaku.twidere.util.HtmlEscapeHelper.toPlainText;
+import static org.mariotaku.twidere.util.SerializationUtil.readString;
+import static org.mariotaku.twidere.util.SerializationUtil.writeString;
 import static org.mariotaku.twidere.util.Utils.formatStatusText;
 import static org.mariotaku.twidere.util.Utils.getAsBoolean;
 import static org.mariotaku.twidere.util.Utils.getAsInteger;
 import static org.mariotaku.twidere.util.Utils.getAsLong;
 import static org.mariotaku.twidere.util.Utils.getBiggerTwitterProfileImage;
+import static org.mariotaku.twidere.util.Utils.getMediaLinkPreviewImage;
 import static org.mariotaku.twidere.util.Utils.getPreviewImage;
 import static org.mariotaku.twidere.util.Utils.parseString;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.Date;
 
@@ -47,6 +53,10 @@ public class ParcelableStatus implements Constants, Parcelable, Serializable, Co
 
 	private static final long serialVersionUID = 8687220519842668226L;
 
+	private static final int FLAG_IS_GAP = 1, FLAG_IS_RETWEET = 1 << 1, FLAG_IS_FAVORITE = 1 << 2,
+			FLAG_IS_PROTECTED = 1 << 3, FLAG_IS_VERIFIED = 1 << 4, FLAG_HAS_MEDIA = 1 << 5,
+			FLAG_IS_POSSIBLY_SENSITIVE = 1 << 6;
+
 	public static final Parcelable.Creator<ParcelableStatus> CREATOR = new Parcelable.Creator<ParcelableStatus>() {
 		@Override
 		public ParcelableStatus createFromParcel(final Parcel in) {
@@ -120,13 +130,52 @@ public class ParcelableStatus implements Constants, Parcelable, Serializable, Co
 		source = values.getAsString(Statuses.SOURCE);
 		retweet_count = getAsInteger(values, Statuses.RETWEET_COUNT, 0);
 		text_unescaped = toPlainText(text_html);
-		final PreviewImage preview = getPreviewImage(text_html, INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE);
+		final PreviewImage preview = values.containsKey(Statuses.MEDIA_LINK) ? getMediaLinkPreviewImage(
+				values.getAsString(Statuses.MEDIA_LINK), INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE)
+				: getPreviewImage(text_html, INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE);
 		has_media = preview.has_image;
 		image_preview_url_string = preview.matched_url;
 		image_orig_url_string = preview.orig_url;
 		is_possibly_sensitive = getAsBoolean(values, Statuses.IS_POSSIBLY_SENSITIVE, false);
 	}
 
+	/**
+	 * Reads status written by {@link #writeTo(DataOutput)}.
+	 */
+	public ParcelableStatus(final ByteBuffer in) throws IOException {
+		retweet_id = in.getLong();
+		retweeted_by_id = in.getLong();
+		status_id = in.getLong();
+		account_id = in.getLong();
+		user_id = in.getLong();
+		status_timestamp = in.getLong();
+		retweet_count = in.getLong();
+		in_reply_to_status_id = in.getLong();
+		my_retweet_id = in.getLong();
+		final int flags = in.get();
+		is_gap = (flags & FLAG_IS_GAP) != 0;
+		is_retweet = (flags & FLAG_IS_RETWEET) != 0;
+		is_favorite = (flags & FLAG_IS_FAVORITE) != 0;
+		is_protected = (flags & FLAG_IS_PROTECTED) != 0;
+		is_verified = (flags & FLAG_IS_VERIFIED) != 0;
+		has_media = (flags & FLAG_HAS_MEDIA) != 0;
+		is_possibly_sensitive = (flags & FLAG_IS_POSSIBLY_SENSITIVE) != 0;
+		retweeted_by_name = readString(in);
+		retweeted_by_screen_name = readString(in);
+		text_html = readString(in);
+		text_plain = readString(in);
+		name = readString(in);
+		screen_name = readString(in);
+		in_reply_to_screen_name = readString(in);
+		source = readString(in);
+		profile_image_url_string = readString(in);
+		image_preview_url_string = readString(in);
+		image_orig_url_string = readString(in);
+		location_string = readString(in);
+		location = new ParcelableLocation(location_string);
+		text_unescaped = toPlainText(text_html);
+	}
+
 	public ParcelableStatus(final Cursor cursor, final StatusCursorIndices indices) {
 		retweet_id = indices.retweet_id != -1 ? cursor.getLong(indices.retweet_id) : -1;
 		retweeted_by_id = indices.retweeted_by_id != -1 ? cursor.getLong(indices.retweeted_by_id) : -1;
@@ -146,7 +195,9 @@ public class ParcelableStatus implements Constants, Parcelable, Serializable, Co
 		retweeted_by_screen_name = indices.retweeted_by_screen_name != -1 ? cursor
 				.getString(indices.retweeted_by_screen_name) : null;
 		text_html = indices.text_html != -1 ? cursor.getString(indices.text_html) : null;
-		final PreviewImage preview = getPreviewImage(text_html, INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE);
+		final PreviewImage preview = indices.media_link != -1 ? getMediaLinkPreviewImage(
+				cursor.getString(indices.media_link), INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE) : getPreviewImage(
+				text_html, INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE);
 		has_media = preview.has_image;
 		text_plain = indices.text_plain != -1 ? cursor.getString(indices.text_plain) : null;
 		name = indices.name != -1 ? cursor.getString(indices.name) : null;
@@ -301,6 +352,43 @@ public class ParcelableStatus implements Constants, Parcelable, Serializable, Co
 				+ location_string + ", text_unescaped=" + text_unescaped + ", location=" + location + "}";
 	}
 
+	/**
+	 * Writes status in binary snapshot format, fields must be kept in the
+	 * same order as {@link #ParcelableStatus(ByteBuffer)}.
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		out.writeLong(retweet_id);
+		out.writeLong(retweeted_by_id);
+		out.writeLong(status_id);
+		out.writeLong(account_id);
+		out.writeLong(user_id);
+		out.writeLong(status_timestamp);
+		out.writeLong(retweet_count);
+		out.writeLong(in_reply_to_status_id);
+		out.writeLong(my_retweet_id);
+		int flags = 0;
+		flags |= is_gap ? FLAG_IS_GAP : 0;
+		flags |= is_retweet ? FLAG_IS_RETWEET : 0;
+		flags |= is_favorite ? FLAG_IS_FAVORITE : 0;
+		flags |= is_protected ? FLAG_IS_PROTECTED : 0;
+		flags |= is_verified ? FLAG_IS_VERIFIED : 0;
+		flags |= has_media ? FLAG_HAS_MEDIA : 0;
+		flags |= is_possibly_sensitive ? FLAG_IS_POSSIBLY_SENSITIVE : 0;
+		out.writeByte(flags);
+		writeString(out, retweeted_by_name);
+		writeString(out, retweeted_by_screen_name);
+		writeString(out, text_html);
+		writeString(out, text_plain);
+		writeString(out, name);
+		writeString(out, screen_name);
+		writeString(out, in_reply_to_screen_name);
+		writeString(out, source);
+		writeString(out, profile_image_url_string);
+		writeString(out, image_preview_url_string);
+		writeString(out, image_orig_url_string);
+		writeString(out, location_string);
+	}
+
 	@Override
 	public void writeToParcel(final Parcel out, final int flags) {
 		out.writeLong(retweet_id);
@@ -28,7 +28,8 @@ public class StatusCursorIndices {
 	public final int account_id, status_id, status_timestamp, name, screen_name, text_html, text_plain,
 			profile_image_url, is_retweet, is_favorite, is_gap, location, is_protected, is_verified,
 			in_reply_to_status_id, in_reply_to_screen_name, my_retweet_id, retweeted_by_name, retweeted_by_screen_name,
-			retweet_id, retweeted_by_id, user_id, source, retweet_count, is_possibly_sensitive;
+			retweet_id, retweeted_by_id, user_id, source, retweet_count, is_possibly_sensitive, user_mentions, hashtags,
+			urls, media_link;
 
 	public StatusCursorIndices(final Cursor cursor) {
 		account_id = cursor.getColumnIndex(Statuses.ACCOUNT_ID);
@@ -56,6 +57,10 @@ public class StatusCursorIndices {
 		source = cursor.getColumnIndex(Statuses.SOURCE);
 		retweet_count = cursor.getColumnIndex(Statuses.RETWEET_COUNT);
 		is_possibly_sensitive = cursor.getColumnIndex(Statuses.IS_POSSIBLY_SENSITIVE);
+		user_mentions = cursor.getColumnIndex(Statuses.USER_MENTIONS);
+		hashtags = cursor.getColumnIndex(Statuses.HASHTAGS);
+		urls = cursor.getColumnIndex(Statuses.URLS);
+		media_link = cursor.getColumnIndex(Statuses.MEDIA_LINK);
 	}
 
 	@Override
@@ -69,6 +74,7 @@ public class StatusCursorIndices {
 				+ my_retweet_id + ", retweeted_by_name=" + retweeted_by_name + ", retweeted_by_screen_name="
 				+ retweeted_by_screen_name + ", retweet_id=" + retweet_id + ", retweeted_by_id=" + retweeted_by_id
 				+ ", user_id=" + user_id + ", source=" + source + ", retweet_count=" + retweet_count
-				+ ", is_possibly_sensitive=" + is_possibly_sensitive + "}";
+				+ ", is_possibly_sensitive=" + is_possibly_sensitive + ", user_mentions=" + user_mentions
+				+ ", hashtags=" + hashtags + ", urls=" + urls + ", media_link=" + media_link + "}";
 	}
 }
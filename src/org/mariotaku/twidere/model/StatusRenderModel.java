@@ -0,0 +1,72 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.model;
+
+/**
+ * Values computed from status text that are expensive to get, they will be
+ * computed once and copied to views when list items are bound.
+ */
+public class StatusRenderModel {
+
+	public final CharSequence text;
+	public final PreviewImage preview;
+	public final boolean has_media, is_mention;
+	public final String name, screen_name;
+
+	public StatusRenderModel(final CharSequence text, final PreviewImage preview, final boolean is_mention,
+			final String name, final String screen_name) {
+		this.text = text;
+		this.preview = preview;
+		has_media = preview != null ? preview.has_image : false;
+		this.is_mention = is_mention;
+		this.name = name;
+		this.screen_name = screen_name;
+	}
+
+	@Override
+	public String toString() {
+		return "StatusRenderModel{text=" + text + ", preview=" + preview + ", has_media=" + has_media
+				+ ", is_mention=" + is_mention + ", name=" + name + ", screen_name=" + screen_name + "}";
+	}
+
+	public static final class Key {
+
+		public final long account_id, status_id;
+
+		public Key(final long account_id, final long status_id) {
+			this.account_id = account_id;
+			this.status_id = status_id;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return account_id == other.account_id && status_id == other.status_id;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (int) (account_id ^ account_id >>> 32) + (int) (status_id ^ status_id >>> 32);
+		}
+
+	}
+}
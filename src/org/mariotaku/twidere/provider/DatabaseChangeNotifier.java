@@ -0,0 +1,129 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.provider;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.mariotaku.twidere.Constants;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Collects database changes and sends broadcasts for them after a short
+ * delay, so a refresh doing delete, insert and update on several tables
+ * results in one broadcast per table instead of one per operation.
+ */
+final class DatabaseChangeNotifier implements Constants {
+
+	static final long NOTIFY_DELAY = 100;
+
+	private final Context mContext;
+	private final Handler mHandler;
+
+	/**
+	 * Ids of changed tables.
+	 */
+	private final Set<Integer> mPendingChanges = new LinkedHashSet<Integer>();
+	private boolean mScheduled;
+
+	private final Runnable mFlushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	DatabaseChangeNotifier(final Context context) {
+		mContext = context;
+		mHandler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * Sends all pending broadcasts now.
+	 */
+	void flush() {
+		final Set<Integer> changes;
+		synchronized (this) {
+			mHandler.removeCallbacks(mFlushRunnable);
+			mScheduled = false;
+			if (mPendingChanges.isEmpty()) return;
+			changes = new LinkedHashSet<Integer>(mPendingChanges);
+			mPendingChanges.clear();
+		}
+		// Filter tables share one action.
+		final Set<String> actions = new HashSet<String>();
+		for (final int table_id : changes) {
+			final String action = getBroadcastAction(table_id);
+			if (action == null || !actions.add(action)) {
+				continue;
+			}
+			mContext.sendBroadcast(new Intent(action));
+		}
+		if (!actions.isEmpty()) {
+			mContext.sendBroadcast(new Intent(BROADCAST_DATABASE_UPDATED));
+		}
+	}
+
+	/**
+	 * Records a change of table.
+	 */
+	void notifyChange(final int table_id) {
+		if (getBroadcastAction(table_id) == null) return;
+		synchronized (this) {
+			mPendingChanges.add(table_id);
+			if (!mScheduled) {
+				mScheduled = true;
+				mHandler.postDelayed(mFlushRunnable, NOTIFY_DELAY);
+			}
+		}
+	}
+
+	private static String getBroadcastAction(final int table_id) {
+		switch (table_id) {
+			case TABLE_ID_ACCOUNTS:
+				return BROADCAST_ACCOUNT_LIST_DATABASE_UPDATED;
+			case TABLE_ID_DRAFTS:
+				return BROADCAST_DRAFTS_DATABASE_UPDATED;
+			case TABLE_ID_STATUSES:
+				return BROADCAST_HOME_TIMELINE_DATABASE_UPDATED;
+			case TABLE_ID_MENTIONS:
+				return BROADCAST_MENTIONS_DATABASE_UPDATED;
+			case TABLE_ID_DIRECT_MESSAGES_INBOX:
+				return BROADCAST_RECEIVED_DIRECT_MESSAGES_DATABASE_UPDATED;
+			case TABLE_ID_DIRECT_MESSAGES_OUTBOX:
+				return BROADCAST_SENT_DIRECT_MESSAGES_DATABASE_UPDATED;
+			case TABLE_ID_TRENDS_LOCAL:
+				return BROADCAST_TRENDS_UPDATED;
+			case TABLE_ID_TABS:
+				return BROADCAST_TABS_UPDATED;
+			case TABLE_ID_FILTERED_LINKS:
+			case TABLE_ID_FILTERED_USERS:
+			case TABLE_ID_FILTERED_KEYWORDS:
+			case TABLE_ID_FILTERED_SOURCES:
+				return BROADCAST_FILTERS_UPDATED;
+		}
+		return null;
+	}
+}
@@ -19,6 +19,10 @@
 
 package org.mariotaku.twidere.provider;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.mariotaku.twidere.Constants;
 import org.mariotaku.twidere.util.ArrayUtils;
 
@@ -159,6 +163,9 @@ public final class TweetStore implements Constants {
 		public static final String[] COLUMNS = new String[] { _ID, NAME };
 		public static final String[] TYPES = new String[] { TYPE_PRIMARY_KEY, TYPE_TEXT };
 
+		public static final String[] INDEX_NAMES = new String[] { "name" };
+		public static final String[] INDEX_COLUMNS = new String[] { NAME };
+
 		public static final String CONTENT_PATH = "cached_hashtags";
 
 		public static final Uri CONTENT_URI = Uri.withAppendedPath(Uri.parse(PROTOCOL_CONTENT + AUTHORITY),
@@ -244,6 +251,10 @@ public final class TweetStore implements Constants {
 				TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_INT,
 				TYPE_INT, TYPE_INT, TYPE_INT };
 
+		public static final String[] INDEX_NAMES = new String[] { "screen_name" };
+
+		public static final String[] INDEX_COLUMNS = new String[] { SCREEN_NAME };
+
 	}
 
 	public static interface CachedValues extends BaseColumns {
@@ -298,61 +309,116 @@ public final class TweetStore implements Constants {
 			public static final Uri CONTENT_URI_SCREEN_NAME = Uri.withAppendedPath(
 					Uri.parse(PROTOCOL_CONTENT + AUTHORITY), CONTENT_PATH_SCREEN_NAME);
 
+			/**
+			 * Builds queries of a conversation thread. Account id, conversation
+			 * key and paging bounds are bound as arguments, so the statement
+			 * text only depends on projection, selection and which bounds are
+			 * used, and can be cached by SQLite. Arguments should be built by
+			 * {@link #buildSelectionArgs(long, String, String[], long, long, int)}
+			 * with the same bounds.
+			 */
 			public static final class QueryBuilder {
 
-				public static final String buildByConversationId(final String[] projection, final long account_id,
-						final long conversation_id, final String selection, final String sortOrder) {
+				/**
+				 * @param max_id Only messages older than it are returned if
+				 *            it's greater than 0
+				 * @param min_id Only messages not older than it are returned if
+				 *            it's greater than 0
+				 * @param limit Only latest messages of this count are returned
+				 *            if it's greater than 0
+				 */
+				public static final String buildByConversationId(final String[] projection, final String selection,
+						final String sortOrder, final long max_id, final long min_id, final int limit) {
+					return build(projection, SENDER_ID, RECIPIENT_ID, selection, sortOrder, max_id, min_id, limit);
+				}
+
+				public static final String buildByScreenName(final String[] projection, final String selection,
+						final String sortOrder, final long max_id, final long min_id, final int limit) {
+					return build(projection, SENDER_SCREEN_NAME, RECIPIENT_SCREEN_NAME, selection, sortOrder, max_id,
+							min_id, limit);
+				}
+
+				public static final String[] buildSelectionArgs(final long account_id, final String conversation_key,
+						final String[] selectionArgs, final long max_id, final long min_id, final int limit) {
+					final List<String> args = new ArrayList<String>();
+					// Once for inbox and once for outbox.
+					for (int i = 0; i < 2; i++) {
+						args.add(String.valueOf(account_id));
+						args.add(conversation_key);
+						if (max_id > 0) {
+							args.add(String.valueOf(max_id));
+						}
+						if (min_id > 0) {
+							args.add(String.valueOf(min_id));
+						}
+						if (selectionArgs != null) {
+							args.addAll(Arrays.asList(selectionArgs));
+						}
+						if (limit > 0) {
+							args.add(String.valueOf(limit));
+						}
+					}
+					if (limit > 0) {
+						args.add(String.valueOf(limit));
+					}
+					return args.toArray(new String[args.size()]);
+				}
+
+				private static String build(final String[] projection, final String inbox_key,
+						final String outbox_key, final String selection, final String sortOrder, final long max_id,
+						final long min_id, final int limit) {
 					final String projection_string = projection != null ? ArrayUtils.toString(projection, ',', false)
 							: "*";
 					final StringBuilder sql_builder = new StringBuilder();
-					sql_builder.append("SELECT " + projection_string);
-					sql_builder.append(" FROM " + TABLE_DIRECT_MESSAGES_INBOX);
-					sql_builder.append(" WHERE " + DirectMessages.ACCOUNT_ID + " = " + account_id);
-					sql_builder.append(" AND " + DirectMessages.SENDER_ID + " = " + conversation_id);
-					if (selection != null) {
-						sql_builder.append(" AND " + selection);
-					}
-					sql_builder.append(" UNION ");
-					sql_builder.append("SELECT " + projection_string);
-					sql_builder.append(" FROM " + TABLE_DIRECT_MESSAGES_OUTBOX);
-					sql_builder.append(" WHERE " + DirectMessages.ACCOUNT_ID + " = " + account_id);
-					sql_builder.append(" AND " + DirectMessages.RECIPIENT_ID + " = " + conversation_id);
-					if (selection != null) {
-						sql_builder.append(" AND " + selection);
+					sql_builder.append("SELECT " + projection_string + " FROM (");
+					appendSelectMessages(sql_builder, TABLE_DIRECT_MESSAGES_INBOX, inbox_key, selection, max_id,
+							min_id, limit);
+					sql_builder.append(" UNION ALL ");
+					appendSelectMessages(sql_builder, TABLE_DIRECT_MESSAGES_OUTBOX, outbox_key, selection, max_id,
+							min_id, limit);
+					if (limit > 0) {
+						sql_builder.append(" ORDER BY " + MESSAGE_ID + " DESC LIMIT ?");
 					}
+					sql_builder.append(")");
 					sql_builder.append(" ORDER BY "
 							+ (sortOrder != null ? sortOrder : DirectMessages.Conversation.DEFAULT_SORT_ORDER));
 					return sql_builder.toString();
 				}
 
-				public static final String buildByScreenName(final String[] projection, final long account_id,
-						final String screen_name, final String selection, final String sortOrder) {
-					final String projection_string = projection != null ? ArrayUtils.toString(projection, ',', false)
-							: "*";
-					final StringBuilder sql_builder = new StringBuilder();
-					sql_builder.append("SELECT " + projection_string);
-					sql_builder.append(" FROM " + TABLE_DIRECT_MESSAGES_INBOX);
-					sql_builder.append(" WHERE " + DirectMessages.ACCOUNT_ID + " = " + account_id);
-					sql_builder.append(" AND " + DirectMessages.SENDER_SCREEN_NAME + " = '" + screen_name + "'");
-					if (selection != null) {
-						sql_builder.append(" AND " + selection);
+				/**
+				 * Inbox and outbox have same columns, so all columns are
+				 * selected and projection is applied to the union of them.
+				 * Messages are found by index on (account_id, key, message_id).
+				 */
+				private static void appendSelectMessages(final StringBuilder sql_builder, final String table,
+						final String key, final String selection, final long max_id, final long min_id,
+						final int limit) {
+					sql_builder.append("SELECT * FROM (SELECT * FROM " + table);
+					sql_builder.append(" WHERE " + ACCOUNT_ID + " = ? AND " + key + " = ?");
+					if (max_id > 0) {
+						sql_builder.append(" AND " + MESSAGE_ID + " < ?");
+					}
+					if (min_id > 0) {
+						sql_builder.append(" AND " + MESSAGE_ID + " >= ?");
 					}
-					sql_builder.append(" UNION ");
-					sql_builder.append("SELECT " + projection_string);
-					sql_builder.append(" FROM " + TABLE_DIRECT_MESSAGES_OUTBOX);
-					sql_builder.append(" WHERE " + DirectMessages.ACCOUNT_ID + " = " + account_id);
-					sql_builder.append(" AND " + DirectMessages.RECIPIENT_SCREEN_NAME + " = '" + screen_name + "'");
 					if (selection != null) {
-						sql_builder.append(" AND " + selection);
+						sql_builder.append(" AND (" + selection + ")");
 					}
-					sql_builder.append(" ORDER BY "
-							+ (sortOrder != null ? sortOrder : DirectMessages.Conversation.DEFAULT_SORT_ORDER));
-					return sql_builder.toString();
+					if (limit > 0) {
+						sql_builder.append(" ORDER BY " + MESSAGE_ID + " DESC LIMIT ?");
+					}
+					sql_builder.append(")");
 				}
 
 			}
 		}
 
+		/**
+		 * Latest message of each conversation, one row per (account_id,
+		 * conversation_id). Rows are maintained by the provider when messages
+		 * are inserted into or deleted from inbox and outbox, and the table is
+		 * read only for other callers.
+		 */
 		public static interface ConversationsEntry extends BaseColumns {
 
 			public static final String CONTENT_PATH = "messages_conversations_entry";
@@ -378,49 +444,70 @@ public final class TweetStore implements Constants {
 			public static final int IDX_TEXT = 8;
 			public static final int IDX_CONVERSATION_ID = 9;
 
+			/**
+			 * Columns are in the order of IDX_* constants.
+			 */
+			public static final String[] COLUMNS = new String[] { _ID, MESSAGE_TIMESTAMP, MESSAGE_ID, ACCOUNT_ID,
+					IS_OUTGOING, NAME, SCREEN_NAME, PROFILE_IMAGE_URL, TEXT, CONVERSATION_ID };
+			public static final String[] TYPES = new String[] { TYPE_PRIMARY_KEY, TYPE_INT, TYPE_INT, TYPE_INT,
+					TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_INT };
+
+			public static final String[] INDEX_NAMES = new String[] { "account_conversation" };
+
+			public static final String[] INDEX_COLUMNS = new String[] { ACCOUNT_ID + ", " + CONVERSATION_ID };
+
+			/**
+			 * Index on (account_id, conversation_id) is unique, so an entry is
+			 * replaced when a newer message of its conversation comes.
+			 */
+			public static final boolean[] INDEX_UNIQUE = new boolean[] { true };
+
+			public static final String DEFAULT_SORT_ORDER = MESSAGE_TIMESTAMP + " DESC";
+
 			public static class QueryBuilder {
-				public static String build(final String where) {
+
+				/**
+				 * Statement inserting a message as the entry of its
+				 * conversation, unless the entry is already newer. Arguments
+				 * are message_timestamp, message_id, account_id, is_outgoing,
+				 * name, screen_name, profile_image_url, text and
+				 * conversation_id.
+				 */
+				public static String buildInsertIfNewer() {
+					final StringBuilder builder = new StringBuilder();
+					builder.append("INSERT OR REPLACE INTO " + TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY);
+					builder.append(" (" + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID + ", "
+							+ IS_OUTGOING + ", " + NAME + ", " + SCREEN_NAME + ", " + PROFILE_IMAGE_URL + ", " + TEXT
+							+ ", " + CONVERSATION_ID + ")");
+					builder.append(" SELECT ?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9");
+					builder.append(" WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY);
+					builder.append(" WHERE " + ACCOUNT_ID + " = ?3 AND " + CONVERSATION_ID + " = ?9 AND "
+							+ MESSAGE_ID + " >= ?2)");
+					return builder.toString();
+				}
+
+				/**
+				 * Statement filling the table from all messages in inbox and
+				 * outbox, table should be emptied first. Messages are inserted
+				 * from the oldest, so the newest one of each conversation
+				 * replaces others.
+				 */
+				public static String buildRefill() {
 					final StringBuilder builder = new StringBuilder();
-					builder.append("SELECT " + _ID + ", " + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID
-							+ ", " + IS_OUTGOING + ", " + NAME + ", " + SCREEN_NAME + ", " + PROFILE_IMAGE_URL + ", "
-							+ TEXT + ", " + CONVERSATION_ID);
-					builder.append(" FROM(");
-					builder.append("SELECT " + _ID + ", " + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID
-							+ ", " + "0 AS " + IS_OUTGOING + ", " + SENDER_NAME + " AS " + NAME + ", "
-							+ SENDER_SCREEN_NAME + " AS " + SCREEN_NAME + ", " + SENDER_PROFILE_IMAGE_URL + " AS "
-							+ PROFILE_IMAGE_URL + ", " + TEXT + ", " + SENDER_ID + " AS " + CONVERSATION_ID);
+					builder.append("INSERT OR REPLACE INTO " + TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY);
+					builder.append(" (" + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID + ", "
+							+ IS_OUTGOING + ", " + NAME + ", " + SCREEN_NAME + ", " + PROFILE_IMAGE_URL + ", " + TEXT
+							+ ", " + CONVERSATION_ID + ")");
+					builder.append(" SELECT " + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID + ", 0, "
+							+ SENDER_NAME + ", " + SENDER_SCREEN_NAME + ", " + SENDER_PROFILE_IMAGE_URL + ", " + TEXT
+							+ ", " + SENDER_ID);
 					builder.append(" FROM " + TABLE_DIRECT_MESSAGES_INBOX);
-					// builder.append(" GROUP BY " + CONVERSATION_ID);
-					// builder.append(" HAVING " + MAX_TIMESTAMP_TEMP +
-					// " NOT NULL" + " AND " + MAX_STATUS_ID
-					// + " NOT NULL");
-					builder.append(" UNION ");
-					builder.append("SELECT " + _ID + ", " + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID
-							+ ", " + "1 AS " + IS_OUTGOING + ", " + RECIPIENT_NAME + " AS " + NAME + ", "
-							+ RECIPIENT_SCREEN_NAME + " AS " + SCREEN_NAME + ", " + RECIPIENT_PROFILE_IMAGE_URL
-							+ " AS " + PROFILE_IMAGE_URL + ", " + TEXT + ", " + RECIPIENT_ID + " AS " + CONVERSATION_ID);
+					builder.append(" UNION ALL");
+					builder.append(" SELECT " + MESSAGE_TIMESTAMP + ", " + MESSAGE_ID + ", " + ACCOUNT_ID + ", 1, "
+							+ RECIPIENT_NAME + ", " + RECIPIENT_SCREEN_NAME + ", " + RECIPIENT_PROFILE_IMAGE_URL + ", "
+							+ TEXT + ", " + RECIPIENT_ID);
 					builder.append(" FROM " + TABLE_DIRECT_MESSAGES_OUTBOX);
-					// builder.append(" GROUP BY " + CONVERSATION_ID);
-					// builder.append(" HAVING " + MAX_TIMESTAMP_TEMP +
-					// " NOT NULL" + " AND " + MAX_STATUS_ID
-					// + " NOT NULL");
-					builder.append(")");
-					builder.append(" WHERE ");
-					builder.append(MESSAGE_ID + " IN(");
-					builder.append("SELECT " + MESSAGE_ID + " FROM (" + " SELECT " + MESSAGE_ID + ", " + SENDER_ID
-							+ " AS " + CONVERSATION_ID + " FROM " + TABLE_DIRECT_MESSAGES_INBOX + " WHERE "
-							+ MESSAGE_ID + " IN (SELECT " + "MAX(" + MESSAGE_ID + ") FROM "
-							+ TABLE_DIRECT_MESSAGES_INBOX + " GROUP BY " + SENDER_ID + ")" + " UNION " + " SELECT "
-							+ MESSAGE_ID + ", " + RECIPIENT_ID + " AS " + CONVERSATION_ID + " FROM "
-							+ TABLE_DIRECT_MESSAGES_OUTBOX + " WHERE " + MESSAGE_ID + " IN (" + " SELECT " + "MAX("
-							+ MESSAGE_ID + ") FROM " + TABLE_DIRECT_MESSAGES_OUTBOX + " GROUP BY " + RECIPIENT_ID
-							+ ")) " + " GROUP BY " + CONVERSATION_ID);
-					builder.append(")");
-					if (where != null) {
-						builder.append(" AND " + where);
-					}
-					builder.append(" GROUP BY " + CONVERSATION_ID);
-					builder.append(" ORDER BY " + MESSAGE_TIMESTAMP + " DESC");
+					builder.append(" ORDER BY " + MESSAGE_ID + " ASC");
 					return builder.toString();
 				}
 			}
@@ -433,6 +520,18 @@ public final class TweetStore implements Constants {
 			public static final Uri CONTENT_URI = Uri.withAppendedPath(Uri.parse(PROTOCOL_CONTENT + AUTHORITY),
 					CONTENT_PATH);
 
+			/**
+			 * Suffixes of the indexes created on inbox table, the full index
+			 * name is "idx_&lt;table&gt;_&lt;suffix&gt;". Conversation threads
+			 * are found by sender.
+			 */
+			public static final String[] INDEX_NAMES = new String[] { "account_message", "account_sender_message",
+					"account_sender_screen_name" };
+
+			public static final String[] INDEX_COLUMNS = new String[] { ACCOUNT_ID + ", " + MESSAGE_ID + " DESC",
+					ACCOUNT_ID + ", " + SENDER_ID + ", " + MESSAGE_ID + " DESC",
+					ACCOUNT_ID + ", " + SENDER_SCREEN_NAME };
+
 		}
 
 		public static interface Outbox extends DirectMessages {
@@ -442,6 +541,16 @@ public final class TweetStore implements Constants {
 			public static final Uri CONTENT_URI = Uri.withAppendedPath(Uri.parse(PROTOCOL_CONTENT + AUTHORITY),
 					CONTENT_PATH);
 
+			/**
+			 * Conversation threads are found by recipient in outbox.
+			 */
+			public static final String[] INDEX_NAMES = new String[] { "account_message", "account_recipient_message",
+					"account_recipient_screen_name" };
+
+			public static final String[] INDEX_COLUMNS = new String[] { ACCOUNT_ID + ", " + MESSAGE_ID + " DESC",
+					ACCOUNT_ID + ", " + RECIPIENT_ID + ", " + MESSAGE_ID + " DESC",
+					ACCOUNT_ID + ", " + RECIPIENT_SCREEN_NAME };
+
 		}
 
 		public static final class QueryBuilder {
@@ -633,6 +742,13 @@ public final class TweetStore implements Constants {
 		 */
 		public static final String IS_GAP = "is_gap";
 
+		/**
+		 * Set to 1 if the status matches any of the filters, updated when
+		 * filters changed.<br>
+		 * Type: INTEGER (boolean)
+		 */
+		public static final String IS_FILTERED = "is_filtered";
+
 		public static final String LOCATION = "location";
 
 		/**
@@ -667,6 +783,34 @@ public final class TweetStore implements Constants {
 
 		public static final String MY_RETWEET_ID = "my_retweet_id";
 
+		/**
+		 * Lower cased screen names of mentioned users, separated by spaces,
+		 * with a leading and a trailing space, e.g. " user1 user2 ".<br>
+		 * Type: TEXT
+		 */
+		public static final String USER_MENTIONS = "user_mentions";
+
+		/**
+		 * Hashtags without "#", in the same format as {@link #USER_MENTIONS},
+		 * case is kept.<br>
+		 * Type: TEXT
+		 */
+		public static final String HASHTAGS = "hashtags";
+
+		/**
+		 * Expanded URLs of links and medias, in the same format as
+		 * {@link #USER_MENTIONS}.<br>
+		 * Type: TEXT
+		 */
+		public static final String URLS = "urls";
+
+		/**
+		 * Link of the first image from supported image hosting services, null
+		 * if the status has no image.<br>
+		 * Type: TEXT
+		 */
+		public static final String MEDIA_LINK = "media_link";
+
 		public static final String SORT_ORDER_TIMESTAMP_DESC = STATUS_TIMESTAMP + " DESC";
 
 		public static final String SORT_ORDER_STATUS_ID_DESC = STATUS_ID + " DESC";
@@ -677,12 +821,27 @@ public final class TweetStore implements Constants {
 				TEXT, TEXT_PLAIN, NAME, SCREEN_NAME, PROFILE_IMAGE_URL, IN_REPLY_TO_STATUS_ID, IN_REPLY_TO_SCREEN_NAME,
 				SOURCE, LOCATION, RETWEET_COUNT, RETWEET_ID, RETWEETED_BY_ID, RETWEETED_BY_NAME,
 				RETWEETED_BY_SCREEN_NAME, MY_RETWEET_ID, IS_RETWEET, IS_FAVORITE, IS_PROTECTED, IS_VERIFIED, IS_GAP,
-				IS_POSSIBLY_SENSITIVE };
+				IS_POSSIBLY_SENSITIVE, IS_FILTERED, USER_MENTIONS, HASHTAGS, URLS, MEDIA_LINK };
 
 		public static final String[] TYPES = new String[] { TYPE_PRIMARY_KEY, TYPE_INT, TYPE_INT, TYPE_INT, TYPE_INT,
 				TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_INT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT,
 				TYPE_INT, TYPE_INT, TYPE_INT, TYPE_TEXT, TYPE_TEXT, TYPE_INT, TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_BOOLEAN,
-				TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_BOOLEAN };
+				TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_BOOLEAN, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT, TYPE_TEXT };
+
+		/**
+		 * Suffixes of the indexes created on statuses tables, the full index
+		 * name is "idx_&lt;table&gt;_&lt;suffix&gt;".
+		 */
+		public static final String[] INDEX_NAMES = new String[] { "account_status", "retweet", "user", "screen_name" };
+
+		public static final String[] INDEX_COLUMNS = new String[] { ACCOUNT_ID + ", " + STATUS_ID + " DESC", RETWEET_ID,
+				USER_ID, SCREEN_NAME };
+
+		/**
+		 * Index on (account_id, status_id) is unique, so statuses can be
+		 * upserted with conflict resolution.
+		 */
+		public static final boolean[] INDEX_UNIQUE = new boolean[] { true, false, false, false };
 
 	}
 
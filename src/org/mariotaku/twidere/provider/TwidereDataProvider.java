@@ -22,21 +22,22 @@ package org.mariotaku.twidere.provider;
 import static android.text.TextUtils.isEmpty;
 import static org.mariotaku.twidere.util.Utils.clearAccountColor;
 import static org.mariotaku.twidere.util.Utils.clearAccountName;
+import static org.mariotaku.twidere.util.Utils.clearTwitterInstances;
 import static org.mariotaku.twidere.util.Utils.getAccountName;
 import static org.mariotaku.twidere.util.Utils.getAccountScreenName;
-import static org.mariotaku.twidere.util.Utils.getAllStatusesCount;
 import static org.mariotaku.twidere.util.Utils.getBiggerTwitterProfileImage;
 import static org.mariotaku.twidere.util.Utils.getTableId;
 import static org.mariotaku.twidere.util.Utils.getTableNameById;
-import static org.mariotaku.twidere.util.Utils.isFiltered;
-import static org.mariotaku.twidere.util.Utils.notifyForUpdatedUri;
 import static org.mariotaku.twidere.util.Utils.parseInt;
+import static org.mariotaku.twidere.util.Utils.parseLong;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.mariotaku.twidere.Constants;
 import org.mariotaku.twidere.R;
@@ -49,12 +50,12 @@ import org.mariotaku.twidere.provider.TweetStore.Accounts;
 import org.mariotaku.twidere.provider.TweetStore.DirectMessages;
 import org.mariotaku.twidere.provider.TweetStore.DirectMessages.Conversation;
 import org.mariotaku.twidere.provider.TweetStore.DirectMessages.ConversationsEntry;
-import org.mariotaku.twidere.provider.TweetStore.Mentions;
 import org.mariotaku.twidere.provider.TweetStore.Statuses;
 import org.mariotaku.twidere.util.ArrayUtils;
 import org.mariotaku.twidere.util.LazyImageLoader;
 import org.mariotaku.twidere.util.NoDuplicatesArrayList;
 import org.mariotaku.twidere.util.PermissionsManager;
+import org.mariotaku.twidere.util.StatusFilter;
 
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -68,8 +69,10 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -85,11 +88,15 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 
 	private Context mContext;
 
-	private SQLiteDatabase mDatabase;
+	private volatile SQLiteDatabase mDatabase;
 	private PermissionsManager mPermissionsManager;
 	private NotificationManager mNotificationManager;
 	private SharedPreferences mPreferences;
-	private LazyImageLoader mProfileImageLoader;
+	private DatabaseChangeNotifier mChangeNotifier;
+
+	private final ExecutorService mFiltersExecutor = Executors.newSingleThreadExecutor();
+	/** Guarded by mFiltersExecutor. */
+	private boolean mStatusesFilteredMarkPending, mFiltersUpdatedNotifyPending;
 
 	private int mNewStatusesCount;
 	private final List<ParcelableStatus> mNewMentions = new ArrayList<ParcelableStatus>();
@@ -128,30 +135,45 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 			}
 			int result = 0;
 			if (table != null && values != null) {
-				final int old_count;
-				switch (table_id) {
-					case TABLE_ID_STATUSES: {
-						old_count = getAllStatusesCount(mContext, Statuses.CONTENT_URI);
+				for (final ContentValues contentValues : values) {
+					markStatusFiltered(table_id, contentValues);
+				}
+				// Rows which didn't exist before and are not filtered, counted
+				// while inserting.
+				int new_items_count = 0;
+				final boolean upsert = "true".equals(uri.getQueryParameter(QUERY_PARAM_UPSERT));
+				switch (upsert ? table_id : -1) {
+					case TABLE_ID_STATUSES:
+					case TABLE_ID_MENTIONS:
+					case TABLE_ID_CACHED_STATUSES: {
+						final int[] new_items = new int[1];
+						result = upsertStatuses(table, values, new_items);
+						new_items_count = new_items[0];
 						break;
 					}
-					case TABLE_ID_MENTIONS: {
-						old_count = getAllStatusesCount(mContext, Mentions.CONTENT_URI);
-						break;
+					default: {
+						getDatabase().beginTransaction();
+						try {
+							for (final ContentValues contentValues : values) {
+								if (getDatabase().insert(table, null, contentValues) != -1
+										&& !isStatusFiltered(contentValues)) {
+									new_items_count++;
+								}
+								result++;
+							}
+							if (isDirectMessagesTable(table_id)) {
+								putConversationsEntries(table_id, values);
+							}
+							getDatabase().setTransactionSuccessful();
+						} finally {
+							getDatabase().endTransaction();
+						}
 					}
-					default:
-						old_count = 0;
-				}
-				mDatabase.beginTransaction();
-				for (final ContentValues contentValues : values) {
-					mDatabase.insert(table, null, contentValues);
-					result++;
 				}
-				mDatabase.setTransactionSuccessful();
-				mDatabase.endTransaction();
 				if (!"false".equals(uri.getQueryParameter(QUERY_PARAM_NOTIFY))) {
 					switch (table_id) {
 						case TABLE_ID_STATUSES: {
-							mNewStatusesCount += getAllStatusesCount(mContext, Statuses.CONTENT_URI) - old_count;
+							mNewStatusesCount += new_items_count;
 							break;
 						}
 					}
@@ -185,7 +207,22 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 					return 0;
 			}
 			if (table == null) return 0;
-			final int result = mDatabase.delete(table, selection, selectionArgs);
+			final int result;
+			if (isDirectMessagesTable(table_id)) {
+				getDatabase().beginTransaction();
+				try {
+					final List<long[]> conversations = getConversationsOfMessages(table_id, selection, selectionArgs);
+					result = getDatabase().delete(table, selection, selectionArgs);
+					if (result > 0) {
+						refreshConversationsEntries(conversations);
+					}
+					getDatabase().setTransactionSuccessful();
+				} finally {
+					getDatabase().endTransaction();
+				}
+			} else {
+				result = getDatabase().delete(table, selection, selectionArgs);
+			}
 			if (result > 0) {
 				onDatabaseUpdated(uri);
 			}
@@ -213,17 +250,36 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 					return null;
 			}
 			if (table == null) return null;
-			final long row_id = mDatabase.insert(table, null, values);
+			markStatusFiltered(table_id, values);
+			final long row_id;
+			if (isDirectMessagesTable(table_id)) {
+				getDatabase().beginTransaction();
+				try {
+					row_id = getDatabase().insert(table, null, values);
+					if (row_id != -1) {
+						putConversationsEntries(table_id, values);
+					}
+					getDatabase().setTransactionSuccessful();
+				} finally {
+					getDatabase().endTransaction();
+				}
+			} else {
+				row_id = getDatabase().insert(table, null, values);
+			}
 			if (!"false".equals(uri.getQueryParameter(QUERY_PARAM_NOTIFY))) {
 				switch (getTableId(uri)) {
 					case TABLE_ID_STATUSES: {
-						mNewStatusesCount++;
+						if (row_id != -1 && !isStatusFiltered(values)) {
+							mNewStatusesCount++;
+						}
 						break;
 					}
 					default:
 				}
 			}
-			onDatabaseUpdated(uri);
+			if (row_id != -1) {
+				onDatabaseUpdated(uri);
+			}
 			onNewItemsInserted(uri, values);
 			return Uri.withAppendedPath(uri, String.valueOf(row_id));
 		} catch (final SQLException e) {
@@ -234,17 +290,17 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 	@Override
 	public boolean onCreate() {
 		mContext = getContext();
-		final TwidereApplication app = TwidereApplication.getInstance(mContext);
-		mDatabase = app.getSQLiteDatabase();
 		mNotificationManager = (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
 		mPreferences = mContext.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
-		mProfileImageLoader = app.getProfileImageLoader();
 		mPermissionsManager = new PermissionsManager(mContext);
+		mChangeNotifier = new DatabaseChangeNotifier(mContext);
 		final IntentFilter filter = new IntentFilter();
 		filter.addAction(BROADCAST_HOME_ACTIVITY_ONSTART);
 		filter.addAction(BROADCAST_HOME_ACTIVITY_ONSTOP);
 		mContext.registerReceiver(mHomeActivityStateReceiver, filter);
-		return mDatabase != null;
+		// Database is opened on first access, so creating provider won't
+		// block application startup on upgrading or opening it.
+		return true;
 	}
 
 	@Override
@@ -272,30 +328,33 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 							: consumer_secret);
 					return new BundleCursor(bundle);
 				}
-				case TABLE_ID_DIRECT_MESSAGES_CONVERSATION: {
-					final List<String> segments = uri.getPathSegments();
-					if (segments.size() != 3) return null;
-					final String query = Conversation.QueryBuilder.buildByConversationId(projection,
-							Long.parseLong(segments.get(1)), Long.parseLong(segments.get(2)), selection, sortOrder);
-					return mDatabase.rawQuery(query, selectionArgs);
-				}
+				case TABLE_ID_DIRECT_MESSAGES_CONVERSATION:
 				case TABLE_ID_DIRECT_MESSAGES_CONVERSATION_SCREEN_NAME: {
 					final List<String> segments = uri.getPathSegments();
 					if (segments.size() != 3) return null;
-					final String query = Conversation.QueryBuilder.buildByScreenName(projection,
-							Long.parseLong(segments.get(1)), segments.get(2), selection, sortOrder);
-					return mDatabase.rawQuery(query, selectionArgs);
+					final long account_id = Long.parseLong(segments.get(1));
+					final long max_id = parseLong(uri.getQueryParameter(QUERY_PARAM_MAX_ID));
+					final long min_id = parseLong(uri.getQueryParameter(QUERY_PARAM_MIN_ID));
+					final int limit = parseInt(uri.getQueryParameter(QUERY_PARAM_LIMIT));
+					final String query = table_id == TABLE_ID_DIRECT_MESSAGES_CONVERSATION ? Conversation.QueryBuilder
+							.buildByConversationId(projection, selection, sortOrder, max_id, min_id, limit)
+							: Conversation.QueryBuilder.buildByScreenName(projection, selection, sortOrder, max_id,
+									min_id, limit);
+					final String[] args = Conversation.QueryBuilder.buildSelectionArgs(account_id, segments.get(2),
+							selectionArgs, max_id, min_id, limit);
+					return getDatabase().rawQuery(query, args);
 				}
 				case TABLE_ID_DIRECT_MESSAGES: {
 					final String query = DirectMessages.QueryBuilder.build(projection, selection, sortOrder);
-					return mDatabase.rawQuery(query, selectionArgs);
+					return getDatabase().rawQuery(query, selectionArgs);
 				}
 				case TABLE_ID_DIRECT_MESSAGES_CONVERSATIONS_ENTRY: {
-					return mDatabase.rawQuery(ConversationsEntry.QueryBuilder.build(selection), null);
+					return getDatabase().query(table, projection, selection, selectionArgs, null, null,
+							sortOrder != null ? sortOrder : ConversationsEntry.DEFAULT_SORT_ORDER);
 				}
 			}
 			if (table == null) return null;
-			return mDatabase.query(table, projection, selection, selectionArgs, null, null, sortOrder);
+			return getDatabase().query(table, projection, selection, selectionArgs, null, null, sortOrder);
 		} catch (final SQLException e) {
 			throw new IllegalStateException(e);
 		}
@@ -314,7 +373,7 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 					case TABLE_ID_DIRECT_MESSAGES_CONVERSATIONS_ENTRY:
 						return 0;
 				}
-				result = mDatabase.update(table, values, selection, selectionArgs);
+				result = getDatabase().update(table, values, selection, selectionArgs);
 			}
 			if (result > 0) {
 				onDatabaseUpdated(uri);
@@ -495,9 +554,10 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 		final Intent content_intent;
 		int notified_count = 0;
 		// Add statuses that not filtered to list for future use.
+		final StatusFilter filter = StatusFilter.getInstance(getDatabase());
 		for (final ContentValues value : values) {
 			final ParcelableStatus status = new ParcelableStatus(value);
-			if (!isFiltered(mDatabase, status)) {
+			if (!filter.isFiltered(status)) {
 				mNewMentions.add(status);
 				mNewMentionScreenNames.add(status.screen_name);
 				mNewMentionAccounts.add(status.account_id);
@@ -536,7 +596,7 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 					: status.name);
 		}
 		final String profile_image_url_string = status.profile_image_url_string;
-		final File profile_image_file = mProfileImageLoader
+		final File profile_image_file = getProfileImageLoader()
 				.getCachedImageFile(display_hires_profile_image ? getBiggerTwitterProfileImage(profile_image_url_string)
 						: profile_image_url_string);
 		final int w = res.getDimensionPixelSize(R.dimen.notification_large_icon_width);
@@ -652,7 +712,7 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 		}
 		final String text_plain = message.text_plain;
 		final String profile_image_url_string = message.sender_profile_image_url_string;
-		final File profile_image_file = mProfileImageLoader
+		final File profile_image_file = getProfileImageLoader()
 				.getCachedImageFile(display_hires_profile_image ? getBiggerTwitterProfileImage(profile_image_url_string)
 						: profile_image_url_string);
 		final int w = res.getDimensionPixelSize(R.dimen.notification_large_icon_width);
@@ -698,47 +758,175 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 		}
 	}
 
-	private void onDatabaseUpdated(final Uri uri) {
-		if (uri == null) return;
-		if ("false".equals(uri.getQueryParameter(QUERY_PARAM_NOTIFY))) return;
-		final Context context = getContext();
-		switch (getTableId(uri)) {
-			case TABLE_ID_ACCOUNTS: {
-				clearAccountColor();
-				clearAccountName();
-				context.sendBroadcast(new Intent(BROADCAST_ACCOUNT_LIST_DATABASE_UPDATED));
-				break;
-			}
-			case TABLE_ID_DRAFTS: {
-				context.sendBroadcast(new Intent(BROADCAST_DRAFTS_DATABASE_UPDATED));
-				break;
+	/**
+	 * Returns (account_id, conversation_id) of messages matching the
+	 * selection.
+	 */
+	private List<long[]> getConversationsOfMessages(final int table_id, final String selection,
+			final String[] selectionArgs) {
+		final String conversation_column = table_id == TABLE_ID_DIRECT_MESSAGES_OUTBOX ? DirectMessages.RECIPIENT_ID
+				: DirectMessages.SENDER_ID;
+		final String[] columns = new String[] { DirectMessages.ACCOUNT_ID, conversation_column };
+		final List<long[]> conversations = new ArrayList<long[]>();
+		final Cursor cur = getDatabase().query(true, getTableNameById(table_id), columns, selection, selectionArgs,
+				null, null, null, null);
+		if (cur == null) return conversations;
+		try {
+			cur.moveToFirst();
+			while (!cur.isAfterLast()) {
+				conversations.add(new long[] { cur.getLong(0), cur.getLong(1) });
+				cur.moveToNext();
 			}
+		} finally {
+			cur.close();
+		}
+		return conversations;
+	}
+
+	private SQLiteDatabase getDatabase() {
+		final SQLiteDatabase database = mDatabase;
+		if (database != null) return database;
+		return mDatabase = TwidereApplication.getInstance(mContext).getSQLiteDatabase();
+	}
+
+	private ContentValues getLatestMessage(final int table_id, final long account_id, final long conversation_id) {
+		final String conversation_column = table_id == TABLE_ID_DIRECT_MESSAGES_OUTBOX ? DirectMessages.RECIPIENT_ID
+				: DirectMessages.SENDER_ID;
+		final String where = DirectMessages.ACCOUNT_ID + " = " + account_id + " AND " + conversation_column + " = "
+				+ conversation_id;
+		final Cursor cur = getDatabase().query(getTableNameById(table_id), null, where, null, null, null,
+				DirectMessages.DEFAULT_SORT_ORDER, "1");
+		if (cur == null) return null;
+		try {
+			if (!cur.moveToFirst()) return null;
+			final ContentValues values = new ContentValues();
+			DatabaseUtils.cursorRowToContentValues(cur, values);
+			return values;
+		} finally {
+			cur.close();
+		}
+	}
+
+	private LazyImageLoader getProfileImageLoader() {
+		return TwidereApplication.getInstance(mContext).getProfileImageLoader();
+	}
+
+	private static boolean isDirectMessagesTable(final int table_id) {
+		return table_id == TABLE_ID_DIRECT_MESSAGES_INBOX || table_id == TABLE_ID_DIRECT_MESSAGES_OUTBOX;
+	}
+
+	/**
+	 * Returns true if values are marked filtered by
+	 * {@link #markStatusFiltered(int, ContentValues)}.
+	 */
+	private static boolean isStatusFiltered(final ContentValues values) {
+		return values != null && Boolean.TRUE.equals(values.getAsBoolean(Statuses.IS_FILTERED));
+	}
+
+	/**
+	 * Marks status with current filters before it's written, so timelines
+	 * can simply check {@link Statuses#IS_FILTERED}.
+	 */
+	private void markStatusFiltered(final int table_id, final ContentValues values) {
+		if (values == null) return;
+		switch (table_id) {
 			case TABLE_ID_STATUSES:
-			case TABLE_ID_MENTIONS:
-			case TABLE_ID_DIRECT_MESSAGES_INBOX:
-			case TABLE_ID_DIRECT_MESSAGES_OUTBOX: {
-				notifyForUpdatedUri(context, uri);
+			case TABLE_ID_MENTIONS: {
+				values.put(Statuses.IS_FILTERED, StatusFilter.getInstance(getDatabase()).isFiltered(values));
 				break;
 			}
-			case TABLE_ID_TRENDS_LOCAL: {
-				context.sendBroadcast(new Intent(BROADCAST_TRENDS_UPDATED));
-				break;
+		}
+	}
+
+	/**
+	 * Re-evaluates all statuses in table with current filters in one
+	 * transaction, only rows whose flag changed are written.
+	 */
+	private void markStatusesFiltered(final String table) {
+		final SQLiteDatabase database = getDatabase();
+		final String[] cols = new String[] { Statuses._ID, Statuses.TEXT_PLAIN, Statuses.TEXT, Statuses.SCREEN_NAME,
+				Statuses.SOURCE, Statuses.IS_FILTERED };
+		final Cursor cur = database.query(table, cols, null, null, null, null, null);
+		if (cur == null) return;
+		final StatusFilter filter = StatusFilter.getInstance(getDatabase());
+		database.beginTransaction();
+		final SQLiteStatement update = database.compileStatement("UPDATE " + table + " SET "
+				+ Statuses.IS_FILTERED + " = ? WHERE " + Statuses._ID + " = ?");
+		try {
+			cur.moveToFirst();
+			while (!cur.isAfterLast()) {
+				final boolean filtered = filter.isFiltered(cur.getString(1), cur.getString(2), cur.getString(3),
+						cur.getString(4));
+				if (cur.isNull(5) || (cur.getInt(5) == 1) != filtered) {
+					update.bindLong(1, filtered ? 1 : 0);
+					update.bindLong(2, cur.getLong(0));
+					update.execute();
+				}
+				cur.moveToNext();
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			update.close();
+			cur.close();
+			database.endTransaction();
+		}
+	}
+
+	/**
+	 * Marks statuses with new filters on a background thread, as it reads
+	 * and may update every status. Changes made before it starts are handled
+	 * in one pass. {@link #BROADCAST_FILTERS_UPDATED} is sent after it's
+	 * done, so receivers reload timelines with statuses marked.
+	 */
+	private void markStatusesFilteredInBackground(final boolean notify) {
+		synchronized (mFiltersExecutor) {
+			mFiltersUpdatedNotifyPending |= notify;
+			if (mStatusesFilteredMarkPending) return;
+			mStatusesFilteredMarkPending = true;
+		}
+		mFiltersExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final boolean notify_changes;
+				synchronized (mFiltersExecutor) {
+					mStatusesFilteredMarkPending = false;
+					notify_changes = mFiltersUpdatedNotifyPending;
+					mFiltersUpdatedNotifyPending = false;
+				}
+				markStatusesFiltered(TABLE_STATUSES);
+				markStatusesFiltered(TABLE_MENTIONS);
+				if (notify_changes) {
+					// All filter tables share one broadcast.
+					mChangeNotifier.notifyChange(TABLE_ID_FILTERED_KEYWORDS);
+				}
 			}
-			case TABLE_ID_TABS: {
-				context.sendBroadcast(new Intent(BROADCAST_TABS_UPDATED));
+		});
+	}
+
+	private void onDatabaseUpdated(final Uri uri) {
+		if (uri == null) return;
+		final int table_id = getTableId(uri);
+		final boolean notify = !"false".equals(uri.getQueryParameter(QUERY_PARAM_NOTIFY));
+		switch (table_id) {
+			case TABLE_ID_ACCOUNTS: {
+				clearAccountColor();
+				clearAccountName();
+				clearTwitterInstances();
 				break;
 			}
 			case TABLE_ID_FILTERED_LINKS:
 			case TABLE_ID_FILTERED_USERS:
 			case TABLE_ID_FILTERED_KEYWORDS:
 			case TABLE_ID_FILTERED_SOURCES: {
-				context.sendBroadcast(new Intent(BROADCAST_FILTERS_UPDATED));
-				break;
-			}
-			default:
+				// Statuses must be marked again before anyone receives
+				// BROADCAST_FILTERS_UPDATED and reloads timelines.
+				StatusFilter.invalidate();
+				markStatusesFilteredInBackground(notify);
 				return;
+			}
 		}
-		context.sendBroadcast(new Intent(BROADCAST_DATABASE_UPDATED));
+		if (!notify) return;
+		mChangeNotifier.notifyChange(table_id);
 	}
 
 	private void onNewItemsInserted(final Uri uri, final ContentValues... values) {
@@ -782,6 +970,139 @@ public final class TwidereDataProvider extends ContentProvider implements Consta
 		}
 	}
 
+	/**
+	 * Makes messages entries of their conversations, if they are newer than
+	 * current entries. Messages should be in the table of table_id.
+	 */
+	private void putConversationsEntries(final int table_id, final ContentValues... values) {
+		final boolean outgoing = table_id == TABLE_ID_DIRECT_MESSAGES_OUTBOX;
+		final SQLiteStatement insert = getDatabase().compileStatement(ConversationsEntry.QueryBuilder
+				.buildInsertIfNewer());
+		try {
+			for (final ContentValues message : values) {
+				if (message == null) {
+					continue;
+				}
+				final Long account_id = message.getAsLong(DirectMessages.ACCOUNT_ID);
+				final Long message_id = message.getAsLong(DirectMessages.MESSAGE_ID);
+				final Long conversation_id = message.getAsLong(outgoing ? DirectMessages.RECIPIENT_ID
+						: DirectMessages.SENDER_ID);
+				if (account_id == null || message_id == null || conversation_id == null) {
+					continue;
+				}
+				insert.clearBindings();
+				DatabaseUtils.bindObjectToProgram(insert, 1, message.get(DirectMessages.MESSAGE_TIMESTAMP));
+				insert.bindLong(2, message_id);
+				insert.bindLong(3, account_id);
+				insert.bindLong(4, outgoing ? 1 : 0);
+				DatabaseUtils.bindObjectToProgram(insert, 5, message.get(outgoing ? DirectMessages.RECIPIENT_NAME
+						: DirectMessages.SENDER_NAME));
+				DatabaseUtils.bindObjectToProgram(insert, 6, message.get(outgoing ? DirectMessages.RECIPIENT_SCREEN_NAME
+						: DirectMessages.SENDER_SCREEN_NAME));
+				DatabaseUtils.bindObjectToProgram(insert, 7, message.get(outgoing
+						? DirectMessages.RECIPIENT_PROFILE_IMAGE_URL : DirectMessages.SENDER_PROFILE_IMAGE_URL));
+				DatabaseUtils.bindObjectToProgram(insert, 8, message.get(DirectMessages.TEXT));
+				insert.bindLong(9, conversation_id);
+				insert.execute();
+			}
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * Finds entries of conversations again after messages deleted, should be
+	 * called in transaction.
+	 */
+	private void refreshConversationsEntries(final List<long[]> conversations) {
+		for (final long[] conversation : conversations) {
+			final long account_id = conversation[0], conversation_id = conversation[1];
+			final String where = DirectMessages.ACCOUNT_ID + " = " + account_id + " AND "
+					+ ConversationsEntry.CONVERSATION_ID + " = " + conversation_id;
+			getDatabase().delete(TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY, where, null);
+			putConversationsEntries(TABLE_ID_DIRECT_MESSAGES_INBOX,
+					getLatestMessage(TABLE_ID_DIRECT_MESSAGES_INBOX, account_id, conversation_id));
+			putConversationsEntries(TABLE_ID_DIRECT_MESSAGES_OUTBOX,
+					getLatestMessage(TABLE_ID_DIRECT_MESSAGES_OUTBOX, account_id, conversation_id));
+		}
+	}
+
+	/**
+	 * Inserts statuses in a single transaction, rows with same account_id and
+	 * status_id will be replaced, and retweets of inserted statuses will be
+	 * removed, so the list will never show missing rows between delete and
+	 * insert.
+	 * 
+	 * @param new_items_count First element will be set to count of rows which
+	 *            didn't exist before and are not filtered.
+	 */
+	private int upsertStatuses(final String table, final ContentValues[] values, final int[] new_items_count) {
+		final SQLiteDatabase database = getDatabase();
+		final List<String> columns_list = new ArrayList<String>();
+		for (final String column : Statuses.COLUMNS) {
+			if (!Statuses._ID.equals(column)) {
+				columns_list.add(column);
+			}
+		}
+		final String[] columns = columns_list.toArray(new String[columns_list.size()]);
+		final StringBuilder insert_sql = new StringBuilder();
+		insert_sql.append("INSERT OR REPLACE INTO " + table);
+		insert_sql.append(" (" + ArrayUtils.toString(columns, ',', false) + ")");
+		insert_sql.append(" VALUES (");
+		for (int i = 0, j = columns.length; i < j; i++) {
+			insert_sql.append(i == 0 ? "?" : ", ?");
+		}
+		insert_sql.append(")");
+		final String delete_sql = "DELETE FROM " + table + " WHERE " + Statuses.ACCOUNT_ID + " = ? AND "
+				+ Statuses.RETWEET_ID + " = ?";
+		final String exists_sql = "SELECT COUNT(*) FROM " + table + " WHERE " + Statuses.ACCOUNT_ID + " = ? AND "
+				+ Statuses.STATUS_ID + " = ?";
+		int result = 0, new_count = 0;
+		database.beginTransaction();
+		final SQLiteStatement insert = database.compileStatement(insert_sql.toString());
+		final SQLiteStatement delete = database.compileStatement(delete_sql);
+		final SQLiteStatement exists = database.compileStatement(exists_sql);
+		try {
+			for (final ContentValues contentValues : values) {
+				if (contentValues == null) {
+					continue;
+				}
+				final Long account_id = contentValues.getAsLong(Statuses.ACCOUNT_ID);
+				final Long status_id = contentValues.getAsLong(Statuses.STATUS_ID);
+				boolean is_new = true;
+				if (account_id != null && status_id != null) {
+					// Uses the unique (account_id, status_id) index.
+					exists.bindLong(1, account_id);
+					exists.bindLong(2, status_id);
+					is_new = exists.simpleQueryForLong() == 0;
+					delete.bindLong(1, account_id);
+					delete.bindLong(2, status_id);
+					delete.execute();
+				}
+				insert.clearBindings();
+				for (int i = 0, j = columns.length; i < j; i++) {
+					DatabaseUtils.bindObjectToProgram(insert, i + 1, contentValues.get(columns[i]));
+				}
+				if (insert.executeInsert() != -1) {
+					result++;
+					if (is_new && !isStatusFiltered(contentValues)) {
+						new_count++;
+					}
+				}
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			insert.close();
+			delete.close();
+			exists.close();
+			database.endTransaction();
+		}
+		if (new_items_count != null && new_items_count.length > 0) {
+			new_items_count[0] = new_count;
+		}
+		return result;
+	}
+
 	private static String stripMentionText(final String text, final String my_screen_name) {
 		if (text == null || my_screen_name == null) return text;
 		final String temp = "@" + my_screen_name + " ";
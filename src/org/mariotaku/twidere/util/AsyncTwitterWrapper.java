@@ -24,7 +24,6 @@ import static org.mariotaku.twidere.provider.TweetStore.STATUSES_URIS;
 import static org.mariotaku.twidere.util.Utils.appendQueryParameters;
 import static org.mariotaku.twidere.util.Utils.getAccountScreenName;
 import static org.mariotaku.twidere.util.Utils.getActivatedAccountIds;
-import static org.mariotaku.twidere.util.Utils.getAllStatusesIds;
 import static org.mariotaku.twidere.util.Utils.getImagePathFromUri;
 import static org.mariotaku.twidere.util.Utils.getImageUploadStatus;
 import static org.mariotaku.twidere.util.Utils.getNewestMessageIdsFromDatabase;
@@ -1227,17 +1226,15 @@ public class AsyncTwitterWrapper extends TwitterWrapper {
 
 		@Override
 		protected List<TwitterListResponse<DirectMessage>> doInBackground(final Void... params) {
-
-			final List<TwitterListResponse<DirectMessage>> result = new ArrayList<TwitterListResponse<DirectMessage>>();
-
-			if (account_ids == null) return result;
-
-			int idx = 0;
 			final int load_item_limit = mPreferences.getInt(PREFERENCE_KEY_LOAD_ITEM_LIMIT,
 					PREFERENCE_DEFAULT_LOAD_ITEM_LIMIT);
-			for (final long account_id : account_ids) {
-				final Twitter twitter = getTwitterInstance(mContext, account_id, true);
-				if (twitter != null) {
+			// Accounts are fetched concurrently, responses are in the same
+			// order as account_ids.
+			return new ParallelAccountsFetcher<TwitterListResponse<DirectMessage>>() {
+
+				@Override
+				public TwitterListResponse<DirectMessage> fetch(final Twitter twitter, final long account_id,
+						final int idx) {
 					try {
 						final Paging paging = new Paging();
 						paging.setCount(load_item_limit);
@@ -1251,19 +1248,20 @@ public class AsyncTwitterWrapper extends TwitterWrapper {
 							paging.setSinceId(since_id);
 						}
 						final ResponseList<DirectMessage> statuses = getDirectMessages(twitter, paging);
-
-						if (statuses != null) {
-							result.add(new TwitterListResponse<DirectMessage>(account_id, max_id, since_id,
-									load_item_limit, statuses, null));
-						}
+						if (statuses == null) return null;
+						return new TwitterListResponse<DirectMessage>(account_id, max_id, since_id, load_item_limit,
+								statuses, null);
 					} catch (final TwitterException e) {
-						result.add(new TwitterListResponse<DirectMessage>(account_id, -1, -1, load_item_limit, null, e));
+						return new TwitterListResponse<DirectMessage>(account_id, -1, -1, load_item_limit, null, e);
 					}
 				}
-				idx++;
-			}
-			return result;
 
+				@Override
+				public Twitter getTwitter(final long account_id) {
+					return getTwitterInstance(mContext, account_id, true);
+				}
+
+			}.fetchAll(account_ids);
 		}
 
 		@Override
@@ -1447,17 +1445,14 @@ public class AsyncTwitterWrapper extends TwitterWrapper {
 
 		@Override
 		protected List<StatusListResponse> doInBackground(final Void... params) {
-
-			final List<StatusListResponse> result = new ArrayList<StatusListResponse>();
-
-			if (account_ids == null) return result;
-
-			int idx = 0;
 			final int load_item_limit = mPreferences.getInt(PREFERENCE_KEY_LOAD_ITEM_LIMIT,
 					PREFERENCE_DEFAULT_LOAD_ITEM_LIMIT);
-			for (final long account_id : account_ids) {
-				final Twitter twitter = getTwitter(account_id);
-				if (twitter != null) {
+			// Accounts are fetched concurrently, responses are in the same
+			// order as account_ids.
+			return new ParallelAccountsFetcher<StatusListResponse>() {
+
+				@Override
+				public StatusListResponse fetch(final Twitter twitter, final long account_id, final int idx) {
 					try {
 						final Paging paging = new Paging();
 						paging.setCount(load_item_limit);
@@ -1471,17 +1466,19 @@ public class AsyncTwitterWrapper extends TwitterWrapper {
 							paging.setSinceId(since_id);
 						}
 						final ResponseList<twitter4j.Status> statuses = getStatuses(twitter, paging);
-						if (statuses != null) {
-							result.add(new StatusListResponse(account_id, max_id, since_id, load_item_limit, statuses,
-									null));
-						}
+						if (statuses == null) return null;
+						return new StatusListResponse(account_id, max_id, since_id, load_item_limit, statuses, null);
 					} catch (final TwitterException e) {
-						result.add(new StatusListResponse(account_id, -1, -1, load_item_limit, null, e));
+						return new StatusListResponse(account_id, -1, -1, load_item_limit, null, e);
 					}
 				}
-				idx++;
-			}
-			return result;
+
+				@Override
+				public Twitter getTwitter(final long account_id) {
+					return GetStatusesTask.this.getTwitter(account_id);
+				}
+
+			}.fetchAll(account_ids);
 		}
 
 		@Override
@@ -1960,53 +1957,41 @@ public class AsyncTwitterWrapper extends TwitterWrapper {
 
 				}
 
-				// Delete all rows conflicting before new data inserted.
-
 				final ArrayList<Long> account_newly_inserted = new ArrayList<Long>();
 				account_newly_inserted.addAll(status_ids);
 				account_newly_inserted.removeAll(ids_in_db);
 				newly_inserted_ids.addAll(account_newly_inserted);
-				final StringBuilder delete_where = new StringBuilder();
-				final String ids_string = ListUtils.toString(status_ids, ',', true);
-				delete_where.append(Statuses.ACCOUNT_ID + " = " + account_id);
-				delete_where.append(" AND ");
-				delete_where.append("(");
-				delete_where.append(Statuses.STATUS_ID + " IN ( " + ids_string + " ) ");
-				delete_where.append(" OR ");
-				delete_where.append(Statuses.RETWEET_ID + " IN ( " + ids_string + " ) ");
-				delete_where.append(")");
-				final Uri delete_uri = appendQueryParameters(uri, new NameValuePairImpl(QUERY_PARAM_NOTIFY, false));
-				final int rows_deleted = mResolver.delete(delete_uri, delete_where.toString(), null);
 				// UCD
 				final String UCD_new_status_ids = ListUtils.toString(account_newly_inserted, ',', true);
 				ProfilingUtil.profile(mContext, account_id, "Download tweets, " + UCD_new_status_ids);
-				all_statuses.addAll(values_list);
-				// Insert previously fetched items.
-				final Uri insert_query = appendQueryParameters(uri, new NameValuePairImpl(QUERY_PARAM_NEW_ITEMS_COUNT,
-						newly_inserted_ids.size() - rows_deleted), new NameValuePairImpl(QUERY_PARAM_NOTIFY, false));
-				mResolver.bulkInsert(insert_query, values_list.toArray(new ContentValues[values_list.size()]));
 
-				// Insert a gap.
+				// Mark the oldest status as a gap before inserting, so we don't
+				// need another update after insertion.
 				// TODO make sure it will not have bugs.
 				final long min_id = status_ids.size() > 0 ? Collections.min(status_ids) : -1;
 				final boolean insert_gap = min_id > 0 && response.load_item_limit <= response.list.size()
 						&& !no_items_before;
 				if (insert_gap) {
-					final ContentValues values = new ContentValues();
-					values.put(Statuses.IS_GAP, 1);
-					final StringBuilder where = new StringBuilder();
-					where.append(Statuses.ACCOUNT_ID + " = " + account_id);
-					where.append(" AND " + Statuses.STATUS_ID + " = " + min_id);
-					final Uri update_uri = appendQueryParameters(uri, new NameValuePairImpl(QUERY_PARAM_NOTIFY, false));
-					mResolver.update(update_uri, values, where.toString(), null);
+					for (final ContentValues values : values_list) {
+						if (values.getAsLong(Statuses.STATUS_ID) == min_id) {
+							values.put(Statuses.IS_GAP, 1);
+						}
+					}
 					// Ignore gaps
 					newly_inserted_ids.remove(min_id);
 				}
+				all_statuses.addAll(values_list);
+
+				// Insert previously fetched items, conflicting rows and
+				// retweets of them will be replaced in the same transaction.
+				final Uri insert_query = appendQueryParameters(uri, new NameValuePairImpl(QUERY_PARAM_NEW_ITEMS_COUNT,
+						account_newly_inserted.size()), new NameValuePairImpl(QUERY_PARAM_UPSERT, true),
+						new NameValuePairImpl(QUERY_PARAM_NOTIFY, false));
+				mResolver.bulkInsert(insert_query, values_list.toArray(new ContentValues[values_list.size()]));
 				succeed = true;
 			}
 			final Bundle bundle = new Bundle();
 			bundle.putBoolean(INTENT_KEY_SUCCEED, succeed);
-			getAllStatusesIds(mContext, uri);
 			if (should_set_min_id && newly_inserted_ids.size() > 0) {
 				bundle.putLong(INTENT_KEY_MIN_ID, Collections.min(newly_inserted_ids));
 			}
@@ -1,6 +1,6 @@
 /*
  *				Twidere - Twitter client for Android
- * 
+ *
  * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
  *
  * This program is free software: you can redistribute it and/or modify
@@ -19,47 +19,59 @@
 
 package org.mariotaku.twidere.util;
 
+import static org.mariotaku.twidere.util.Utils.getHashtags;
 import static org.mariotaku.twidere.util.Utils.makeCachedUserContentValues;
 import static org.mariotaku.twidere.util.Utils.makeStatusContentValues;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.mariotaku.twidere.Constants;
 import org.mariotaku.twidere.R;
+import org.mariotaku.twidere.app.TwidereApplication;
 import org.mariotaku.twidere.provider.TweetStore.CachedHashtags;
 import org.mariotaku.twidere.provider.TweetStore.CachedStatuses;
 import org.mariotaku.twidere.provider.TweetStore.CachedUsers;
 import org.mariotaku.twidere.util.TwitterWrapper.TwitterListResponse;
 
 import twitter4j.User;
-import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Caches users, statuses and hashtags in one transaction. Can be executed on
+ * any thread, tasks are run one by one on a background thread.
+ */
+public class CacheUsersStatusesTask extends AsyncTask<Void, Void, Void> implements Constants {
 
-import com.twitter.Extractor;
-
-public class CacheUsersStatusesTask extends AsyncTask<Void, Void, Void> {
+	private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
 
 	private final TwitterListResponse<twitter4j.Status>[] all_statuses;
-	private final ContentResolver resolver;
+	private final SQLiteDatabase database;
 	private final boolean large_profile_image;
 
 	public CacheUsersStatusesTask(final Context context, final TwitterListResponse<twitter4j.Status>... all_statuses) {
-		resolver = context.getContentResolver();
+		super(new Handler(Looper.getMainLooper()), sExecutor);
+		database = TwidereApplication.getInstance(context).getSQLiteDatabase();
 		this.all_statuses = all_statuses;
 		large_profile_image = context.getResources().getBoolean(R.bool.hires_profile_image);
 	}
 
 	@Override
 	protected Void doInBackground(final Void... args) {
-		if (all_statuses == null || all_statuses.length == 0) return null;
-		final ArrayList<ContentValues> cached_users_values = new ArrayList<ContentValues>();
-		final ArrayList<ContentValues> cached_statuses_values = new ArrayList<ContentValues>();
-		final ArrayList<ContentValues> hashtag_values = new ArrayList<ContentValues>();
-		final ArrayList<Long> user_ids = new ArrayList<Long>(), status_ids = new ArrayList<Long>();
-		final Extractor extractor = new Extractor();
-
-		final ArrayList<String> hashtags = new ArrayList<String>();
+		if (all_statuses == null || all_statuses.length == 0 || database == null) return null;
+		final List<ContentValues> cached_users_values = new ArrayList<ContentValues>();
+		final List<ContentValues> cached_statuses_values = new ArrayList<ContentValues>();
+		final LongHashSet user_ids = new LongHashSet(), status_ids = new LongHashSet();
+		final Set<String> hashtags = new HashSet<String>();
 
 		for (final TwitterListResponse<twitter4j.Status> values : all_statuses) {
 			if (values == null || values.list == null) {
@@ -72,56 +84,57 @@ public class CacheUsersStatusesTask extends AsyncTask<Void, Void, Void> {
 				if (user == null) {
 					continue;
 				}
-				final long user_id = user.getId();
-				status_ids.add(status.getId());
-				if (!user_ids.contains(user_id)) {
-					user_ids.add(user_id);
+				if (user_ids.add(user.getId())) {
 					cached_users_values.add(makeCachedUserContentValues(user, large_profile_image));
+				}
+				if (status_ids.add(status.getId())) {
 					cached_statuses_values.add(makeStatusContentValues(status, values.account_id, large_profile_image));
 				}
-				hashtags.addAll(extractor.extractHashtags(status.getText()));
+				hashtags.addAll(getHashtags(status));
 			}
 		}
-		for (final String hashtag : hashtags) {
-			final ContentValues hashtag_value = new ContentValues();
-			hashtag_value.put(CachedHashtags.NAME, hashtag);
-			hashtag_values.add(hashtag_value);
+		// Cached tables have no observers, so they are written directly
+		// instead of through six provider calls.
+		database.beginTransaction();
+		try {
+			if (!user_ids.isEmpty()) {
+				database.delete(TABLE_CACHED_USERS, CachedUsers.USER_ID + " IN ("
+						+ ArrayUtils.toString(user_ids.toArray(), ',', false) + ")", null);
+			}
+			for (final ContentValues values : cached_users_values) {
+				database.insert(TABLE_CACHED_USERS, null, values);
+			}
+			if (!status_ids.isEmpty()) {
+				database.delete(TABLE_CACHED_STATUSES,
+						CachedStatuses.STATUS_ID + " IN (" + ArrayUtils.toString(status_ids.toArray(), ',', false)
+								+ ")", null);
+			}
+			for (final ContentValues values : cached_statuses_values) {
+				if (values != null) {
+					database.insert(TABLE_CACHED_STATUSES, null, values);
+				}
+			}
+			if (!hashtags.isEmpty()) {
+				final SQLiteStatement delete = database.compileStatement("DELETE FROM " + TABLE_CACHED_HASHTAGS
+						+ " WHERE " + CachedHashtags.NAME + " = ?");
+				final SQLiteStatement insert = database.compileStatement("INSERT INTO " + TABLE_CACHED_HASHTAGS
+						+ " (" + CachedHashtags.NAME + ") VALUES (?)");
+				try {
+					for (final String hashtag : hashtags) {
+						delete.bindString(1, hashtag);
+						delete.execute();
+						insert.bindString(1, hashtag);
+						insert.executeInsert();
+					}
+				} finally {
+					delete.close();
+					insert.close();
+				}
+			}
+			database.setTransactionSuccessful();
+		} finally {
+			database.endTransaction();
 		}
-		resolver.delete(CachedUsers.CONTENT_URI,
-				CachedUsers.USER_ID + " IN (" + ListUtils.toString(user_ids, ',', true) + " )", null);
-		resolver.bulkInsert(CachedUsers.CONTENT_URI,
-				cached_users_values.toArray(new ContentValues[cached_users_values.size()]));
-		resolver.delete(CachedStatuses.CONTENT_URI,
-				CachedStatuses.STATUS_ID + " IN (" + ListUtils.toString(status_ids, ',', true) + " )", null);
-		resolver.bulkInsert(CachedStatuses.CONTENT_URI,
-				cached_statuses_values.toArray(new ContentValues[cached_statuses_values.size()]));
-		resolver.delete(CachedHashtags.CONTENT_URI,
-				CachedHashtags.NAME + " IN (" + ListUtils.toStringForSQL(hashtags.size()) + ")",
-				hashtags.toArray(new String[hashtags.size()]));
-		resolver.bulkInsert(CachedHashtags.CONTENT_URI,
-				hashtag_values.toArray(new ContentValues[hashtag_values.size()]));
 		return null;
 	}
-
-	public static Runnable getRunnable(final Context context,
-			final TwitterListResponse<twitter4j.Status>... all_statuses) {
-		return new ExecuteCacheUserStatusesTaskRunnable(context, all_statuses);
-
-	}
-
-	static class ExecuteCacheUserStatusesTaskRunnable implements Runnable {
-		final Context context;
-		final TwitterListResponse<twitter4j.Status>[] all_statuses;
-
-		ExecuteCacheUserStatusesTaskRunnable(final Context context,
-				final TwitterListResponse<twitter4j.Status>... all_statuses) {
-			this.context = context;
-			this.all_statuses = all_statuses;
-		}
-
-		@Override
-		public void run() {
-			new CacheUsersStatusesTask(context, all_statuses).execute();
-		}
-	}
 }
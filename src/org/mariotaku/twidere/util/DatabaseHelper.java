@@ -19,7 +19,9 @@
 
 package org.mariotaku.twidere.util;
 
+import static org.mariotaku.twidere.util.DatabaseUpgradeHelper.createIndex;
 import static org.mariotaku.twidere.util.DatabaseUpgradeHelper.safeUpgrade;
+import static org.mariotaku.twidere.util.DatabaseUpgradeHelper.safeUpgradeIndexes;
 
 import java.util.HashMap;
 
@@ -64,8 +66,22 @@ public final class DatabaseHelper extends SQLiteOpenHelper implements Constants
 				true));
 		db.execSQL(createTable(TABLE_DIRECT_MESSAGES_OUTBOX, DirectMessages.Outbox.COLUMNS,
 				DirectMessages.Outbox.TYPES, true));
+		db.execSQL(createTable(TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY, DirectMessages.ConversationsEntry.COLUMNS,
+				DirectMessages.ConversationsEntry.TYPES, true));
 		db.execSQL(createTable(TABLE_TRENDS_LOCAL, CachedTrends.Local.COLUMNS, CachedTrends.Local.TYPES, true));
 		db.execSQL(createTable(TABLE_TABS, Tabs.COLUMNS, Tabs.TYPES, true));
+		createIndexes(db, TABLE_STATUSES, Statuses.INDEX_NAMES, Statuses.INDEX_COLUMNS, Statuses.INDEX_UNIQUE);
+		createIndexes(db, TABLE_MENTIONS, Mentions.INDEX_NAMES, Mentions.INDEX_COLUMNS, Mentions.INDEX_UNIQUE);
+		createIndexes(db, TABLE_CACHED_USERS, CachedUsers.INDEX_NAMES, CachedUsers.INDEX_COLUMNS, null);
+		createIndexes(db, TABLE_CACHED_STATUSES, CachedStatuses.INDEX_NAMES, CachedStatuses.INDEX_COLUMNS,
+				CachedStatuses.INDEX_UNIQUE);
+		createIndexes(db, TABLE_CACHED_HASHTAGS, CachedHashtags.INDEX_NAMES, CachedHashtags.INDEX_COLUMNS, null);
+		createIndexes(db, TABLE_DIRECT_MESSAGES_INBOX, DirectMessages.Inbox.INDEX_NAMES,
+				DirectMessages.Inbox.INDEX_COLUMNS, null);
+		createIndexes(db, TABLE_DIRECT_MESSAGES_OUTBOX, DirectMessages.Outbox.INDEX_NAMES,
+				DirectMessages.Outbox.INDEX_COLUMNS, null);
+		createIndexes(db, TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY, DirectMessages.ConversationsEntry.INDEX_NAMES,
+				DirectMessages.ConversationsEntry.INDEX_COLUMNS, DirectMessages.ConversationsEntry.INDEX_UNIQUE);
 		db.setTransactionSuccessful();
 		db.endTransaction();
 	}
@@ -80,6 +96,17 @@ public final class DatabaseHelper extends SQLiteOpenHelper implements Constants
 		handleVersionChange(db);
 	}
 
+	private void createIndexes(final SQLiteDatabase db, final String table, final String[] names,
+			final String[] columns, final boolean[] unique) {
+		if (names == null || columns == null || names.length != columns.length || unique != null
+				&& unique.length != names.length)
+			throw new IllegalArgumentException("Invalid parameters for creating indexes of table " + table);
+		final int length = names.length;
+		for (int i = 0; i < length; i++) {
+			db.execSQL(createIndex(table, names[i], columns[i], unique != null && unique[i], true));
+		}
+	}
+
 	private String createTable(final String tableName, final String[] columns, final String[] types,
 			final boolean create_if_not_exists) {
 		if (tableName == null || columns == null || types == null || types.length != columns.length
@@ -120,8 +147,29 @@ public final class DatabaseHelper extends SQLiteOpenHelper implements Constants
 				true, null);
 		safeUpgrade(db, TABLE_DIRECT_MESSAGES_OUTBOX, DirectMessages.Outbox.COLUMNS, DirectMessages.Outbox.TYPES, true,
 				true, null);
+		safeUpgrade(db, TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY, DirectMessages.ConversationsEntry.COLUMNS,
+				DirectMessages.ConversationsEntry.TYPES, true, true, null);
 		safeUpgrade(db, TABLE_TRENDS_LOCAL, CachedTrends.Local.COLUMNS, CachedTrends.Local.TYPES, true, true, null);
 		safeUpgrade(db, TABLE_TABS, Tabs.COLUMNS, Tabs.TYPES, true, false, null);
+		// Indexes must be upgraded after tables, because tables may be
+		// recreated and indexes will be dropped along with them.
+		safeUpgradeIndexes(db, TABLE_STATUSES, Statuses.INDEX_NAMES, Statuses.INDEX_COLUMNS, Statuses.INDEX_UNIQUE);
+		safeUpgradeIndexes(db, TABLE_MENTIONS, Mentions.INDEX_NAMES, Mentions.INDEX_COLUMNS, Mentions.INDEX_UNIQUE);
+		safeUpgradeIndexes(db, TABLE_CACHED_USERS, CachedUsers.INDEX_NAMES, CachedUsers.INDEX_COLUMNS, null);
+		safeUpgradeIndexes(db, TABLE_CACHED_STATUSES, CachedStatuses.INDEX_NAMES, CachedStatuses.INDEX_COLUMNS,
+				CachedStatuses.INDEX_UNIQUE);
+		safeUpgradeIndexes(db, TABLE_CACHED_HASHTAGS, CachedHashtags.INDEX_NAMES, CachedHashtags.INDEX_COLUMNS, null);
+		safeUpgradeIndexes(db, TABLE_DIRECT_MESSAGES_INBOX, DirectMessages.Inbox.INDEX_NAMES,
+				DirectMessages.Inbox.INDEX_COLUMNS, null);
+		safeUpgradeIndexes(db, TABLE_DIRECT_MESSAGES_OUTBOX, DirectMessages.Outbox.INDEX_NAMES,
+				DirectMessages.Outbox.INDEX_COLUMNS, null);
+		safeUpgradeIndexes(db, TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY,
+				DirectMessages.ConversationsEntry.INDEX_NAMES, DirectMessages.ConversationsEntry.INDEX_COLUMNS,
+				DirectMessages.ConversationsEntry.INDEX_UNIQUE);
+		// Conversations entries are derived from messages, build them again
+		// in case messages were kept but entries were not.
+		db.delete(TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY, null, null);
+		db.execSQL(DirectMessages.ConversationsEntry.QueryBuilder.buildRefill());
 	}
 
 }
@@ -132,6 +132,79 @@ public final class DatabaseUpgradeHelper {
 		db.endTransaction();
 	}
 
+	/**
+	 * Creates indexes for table, index with same name but different definition
+	 * will be dropped and created again, and indexes of this table that no
+	 * longer defined will be dropped. This doesn't touch any data in table.
+	 */
+	public static void safeUpgradeIndexes(final SQLiteDatabase db, final String table, final String[] index_names,
+			final String[] index_columns, final boolean[] index_unique) {
+		if (index_names == null || index_columns == null || index_names.length != index_columns.length)
+			throw new IllegalArgumentException("Invalid parameters, length of index names and columns not match.");
+		if (index_unique != null && index_unique.length != index_names.length)
+			throw new IllegalArgumentException("Invalid parameters, length of index names and unique flags not match.");
+		final HashMap<String, String> old_indexes = new HashMap<String, String>();
+		final Cursor cur = db.query("sqlite_master", new String[] { "name", "sql" }, "type = 'index' AND tbl_name = ?",
+				new String[] { table }, null, null, null);
+		if (cur != null) {
+			cur.moveToFirst();
+			while (!cur.isAfterLast()) {
+				// Automatic indexes for UNIQUE columns have no SQL and can't
+				// be dropped.
+				if (!cur.isNull(1)) {
+					old_indexes.put(cur.getString(0), cur.getString(1));
+				}
+				cur.moveToNext();
+			}
+			cur.close();
+		}
+		final List<String> new_index_names = new ArrayList<String>();
+		db.beginTransaction();
+		final int length = index_names.length;
+		for (int i = 0; i < length; i++) {
+			final String name = getIndexName(table, index_names[i]);
+			final boolean unique = index_unique != null && index_unique[i];
+			final String sql = createIndex(table, index_names[i], index_columns[i], unique, false);
+			new_index_names.add(name);
+			final String old_sql = old_indexes.get(name);
+			if (old_sql != null && old_sql.trim().equalsIgnoreCase(sql)) {
+				continue;
+			}
+			if (old_sql != null) {
+				db.execSQL("DROP INDEX IF EXISTS " + name);
+			}
+			if (unique) {
+				// Old rows may have duplicates, keep the newest one only,
+				// or we will not be able to create the index.
+				final String group_by = index_columns[i].replaceAll("(?i)\\s+(ASC|DESC)", "");
+				db.execSQL("DELETE FROM " + table + " WHERE " + BaseColumns._ID + " NOT IN (SELECT MAX("
+						+ BaseColumns._ID + ") FROM " + table + " GROUP BY " + group_by + ")");
+			}
+			db.execSQL(sql);
+		}
+		for (final String name : old_indexes.keySet()) {
+			if (!new_index_names.contains(name)) {
+				db.execSQL("DROP INDEX IF EXISTS " + name);
+			}
+		}
+		db.setTransactionSuccessful();
+		db.endTransaction();
+	}
+
+	static String createIndex(final String table, final String name, final String columns, final boolean unique,
+			final boolean create_if_not_exists) {
+		if (table == null || name == null || columns == null)
+			throw new IllegalArgumentException("Invalid parameters for creating index " + name);
+		final StringBuilder builder = new StringBuilder(unique ? "CREATE UNIQUE INDEX " : "CREATE INDEX ");
+		if (create_if_not_exists) {
+			builder.append("IF NOT EXISTS ");
+		}
+		builder.append(getIndexName(table, name));
+		builder.append(" ON ").append(table);
+		builder.append(" (").append(columns).append(")");
+		return builder.toString();
+	}
+
 	private static String createTable(final String tableName, final String[] columns, final String[] types,
 			final boolean create_if_not_exists) {
 		if (tableName == null || columns == null || types == null || types.length != columns.length
@@ -183,6 +256,10 @@ public final class DatabaseUpgradeHelper {
 
 	}
 
+	private static String getIndexName(final String table, final String name) {
+		return "idx_" + table + "_" + name;
+	}
+
 	private static int getTypeInt(final String type) {
 		final int idx = type.contains("(") ? type.indexOf("(") : type.indexOf(" ");
 		final String type_main = idx > -1 ? type.substring(0, idx) : type;
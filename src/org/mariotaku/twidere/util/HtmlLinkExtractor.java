@@ -19,68 +19,156 @@
 
 package org.mariotaku.twidere.util;
 
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+/**
+ * Single pass scanner of anchors in html, used like
+ * {@link java.util.regex.Matcher}:
+ * 
+ * <pre>
+ * final HtmlLinkExtractor extractor = new HtmlLinkExtractor(html);
+ * while (extractor.find()) {
+ * 	// Use linkStart(), linkEnd(), textStart() and textEnd()
+ * }
+ * </pre>
+ * 
+ * Only offsets are recorded, strings are created only if {@link #getLink()}
+ * or {@link #getLinkText()} is called. Instance can be reused with
+ * {@link #reset(String)}.
+ */
 public class HtmlLinkExtractor {
 
-	private final Pattern patternTag, patternLink;
-	private Matcher matcherTag, matcherLink;
-
-	private static final String HTML_A_TAG_PATTERN = "(?i)<a([^>]+)>(.+?)</a>";
-	private static final String HTML_A_HREF_TAG_PATTERN = "\\s*(?i)href\\s*=\\s*(\"([^\"]*\")|'[^']*'|([^'\">\\s]+))";
+	private String mHtml;
+	private int mPosition;
+	private int mLinkStart, mLinkEnd, mTextStart, mTextEnd;
 
 	public HtmlLinkExtractor() {
-		patternTag = Pattern.compile(HTML_A_TAG_PATTERN);
-		patternLink = Pattern.compile(HTML_A_HREF_TAG_PATTERN);
+		this(null);
+	}
+
+	public HtmlLinkExtractor(final String html) {
+		reset(html);
 	}
 
 	/**
-	 * Validate html with regular expression
+	 * Finds next anchor with a href attribute and non-empty text.
 	 * 
-	 * @param html html content for validation
-	 * @return Vector links and link text
+	 * @return true if an anchor is found.
 	 */
-	public Vector<HtmlLink> grabLinks(final String html) {
-		final Vector<HtmlLink> result = new Vector<HtmlLink>();
-		matcherTag = patternTag.matcher(html);
-		while (matcherTag.find()) {
-			final String href = matcherTag.group(1); // href
-			final String linkText = matcherTag.group(2); // link text
-			matcherLink = patternLink.matcher(href);
-			while (matcherLink.find()) {
-				final String link = matcherLink.group(1); // link
-				final HtmlLink obj = new HtmlLink(link, linkText);
-				result.add(obj);
+	public boolean find() {
+		final String html = mHtml;
+		if (html == null) return false;
+		final int length = html.length();
+		int pos = mPosition;
+		while (pos < length) {
+			final int tag_start = html.indexOf('<', pos);
+			if (tag_start < 0 || tag_start + 2 >= length) break;
+			final char c = html.charAt(tag_start + 1);
+			if (c != 'a' && c != 'A' || !Character.isWhitespace(html.charAt(tag_start + 2))) {
+				pos = tag_start + 1;
+				continue;
+			}
+			final int tag_end = html.indexOf('>', tag_start + 2);
+			if (tag_end < 0) break;
+			final int close = indexOfIgnoreCase(html, "</a>", tag_end + 1);
+			if (close < 0) break;
+			pos = close + 4;
+			if (close > tag_end + 1 && findHref(html, tag_start + 2, tag_end)) {
+				mTextStart = tag_end + 1;
+				mTextEnd = close;
+				mPosition = pos;
+				return true;
 			}
 		}
-		return result;
+		mPosition = length;
+		mLinkStart = mLinkEnd = mTextStart = mTextEnd = -1;
+		return false;
 	}
 
-	static class HtmlLink {
+	public String getLink() {
+		return mLinkStart >= 0 ? mHtml.substring(mLinkStart, mLinkEnd) : null;
+	}
 
-		private final String link;
-		private final String text;
+	public String getLinkText() {
+		return mTextStart >= 0 ? mHtml.substring(mTextStart, mTextEnd) : null;
+	}
 
-		private HtmlLink(final String link, final String text) {
-			this.link = replaceInvalidChar(link);
-			this.text = text;
-		};
+	public int linkEnd() {
+		return mLinkEnd;
+	}
 
-		public String getLink() {
-			return link;
-		}
+	public int linkStart() {
+		return mLinkStart;
+	}
 
-		public String getLinkText() {
-			return text;
+	public HtmlLinkExtractor reset(final String html) {
+		mHtml = html;
+		mPosition = 0;
+		mLinkStart = mLinkEnd = mTextStart = mTextEnd = -1;
+		return this;
+	}
+
+	public int textEnd() {
+		return mTextEnd;
+	}
+
+	public int textStart() {
+		return mTextStart;
+	}
+
+	/**
+	 * Finds value of href attribute between start and end, quoted or not.
+	 */
+	private boolean findHref(final String html, final int start, final int end) {
+		int pos = start;
+		while (true) {
+			final int attr_start = indexOfIgnoreCase(html, "href", pos);
+			if (attr_start < 0 || attr_start + 4 > end) return false;
+			pos = attr_start + 4;
+			if (!Character.isWhitespace(html.charAt(attr_start - 1))) {
+				continue;
+			}
+			int i = skipWhitespaces(html, pos, end);
+			if (i >= end || html.charAt(i) != '=') {
+				continue;
+			}
+			i = skipWhitespaces(html, i + 1, end);
+			if (i >= end) return false;
+			final char quote = html.charAt(i);
+			if (quote == '"' || quote == '\'') {
+				final int value_end = html.indexOf(quote, i + 1);
+				if (value_end < 0 || value_end > end) return false;
+				mLinkStart = i + 1;
+				mLinkEnd = value_end;
+			} else {
+				int value_end = i;
+				while (value_end < end) {
+					final char v = html.charAt(value_end);
+					if (v == '"' || v == '\'' || Character.isWhitespace(v)) {
+						break;
+					}
+					value_end++;
+				}
+				mLinkStart = i;
+				mLinkEnd = value_end;
+			}
+			return true;
 		}
+	}
 
-		private static String replaceInvalidChar(String link) {
-			link = link.replaceAll("'", "");
-			link = link.replaceAll("\"", "");
-			return link;
+	private static int indexOfIgnoreCase(final String str, final String target, final int from) {
+		final int first = Character.toLowerCase(target.charAt(0));
+		final int length = target.length();
+		for (int i = from, j = str.length() - length; i <= j; i++) {
+			if (Character.toLowerCase(str.charAt(i)) == first && str.regionMatches(true, i, target, 0, length))
+				return i;
 		}
+		return -1;
+	}
 
+	private static int skipWhitespaces(final String str, final int from, final int end) {
+		int i = from;
+		while (i < end && Character.isWhitespace(str.charAt(i))) {
+			i++;
+		}
+		return i;
 	}
 }
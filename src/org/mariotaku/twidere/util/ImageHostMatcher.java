@@ -0,0 +1,255 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import static org.mariotaku.twidere.util.TwidereLinkify.IMGLY_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.IMGUR_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.INSTAGRAM_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.MOBYPICTURE_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_IMGLY;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_IMGUR;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_INSTAGRAM;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_LOCKERZ_AND_PLIXI;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_MOBYPICTURE;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_PHOTOZOU;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_SINA_WEIBO_IMAGES;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITGOO;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITPIC;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITTER_IMAGES;
+import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_YFROG;
+import static org.mariotaku.twidere.util.TwidereLinkify.PHOTOZOU_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.TWITGOO_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.TWITPIC_GROUP_ID;
+import static org.mariotaku.twidere.util.TwidereLinkify.YFROG_GROUP_ID;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mariotaku.twidere.model.ImageSpec;
+
+/**
+ * Finds image hosting service of a link by its host name, so only the pattern
+ * of that service is tried. Results, including links that are not images, are
+ * kept in a bounded LRU cache, so a link is usually only matched once.
+ */
+public final class ImageHostMatcher {
+
+	private static final int MAX_CACHE_SIZE = 512;
+
+	private static final Map<String, Rule> sRules = new HashMap<String, Rule>();
+	private static final String[] sHosts;
+	private static final Rule RULE_SINA_WEIBO = new Rule(PATTERN_SINA_WEIBO_IMAGES, 0) {
+		@Override
+		ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+			return Utils.getSinaWeiboImage(link, large_image_preview);
+		}
+	};
+
+	private static final Entry NOT_MATCHED = new Entry(null, null);
+
+	private static final LinkedHashMap<String, Entry> sCache = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 2585451914213587371L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+			return size() > MAX_CACHE_SIZE;
+		}
+	};
+
+	static {
+		final Rule twitter = new Rule(PATTERN_TWITTER_IMAGES, 0) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getTwitterImage(link, large_image_preview);
+			}
+		};
+		sRules.put("p.twimg.com", twitter);
+		sRules.put("pbs.twimg.com", twitter);
+		sRules.put("twitpic.com", new Rule(PATTERN_TWITPIC, TWITPIC_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getTwitpicImage(id, large_image_preview);
+			}
+		});
+		final Rule instagram = new Rule(PATTERN_INSTAGRAM, INSTAGRAM_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getInstagramImage(id, large_image_preview);
+			}
+		};
+		sRules.put("instagr.am", instagram);
+		sRules.put("instagram.com", instagram);
+		final Rule imgur = new Rule(PATTERN_IMGUR, IMGUR_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getImgurImage(id, large_image_preview);
+			}
+		};
+		sRules.put("imgur.com", imgur);
+		sRules.put("i.imgur.com", imgur);
+		sRules.put("img.ly", new Rule(PATTERN_IMGLY, IMGLY_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getImglyImage(id, large_image_preview);
+			}
+		});
+		sRules.put("yfrog.com", new Rule(PATTERN_YFROG, YFROG_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getYfrogImage(id, large_image_preview);
+			}
+		});
+		final Rule lockerz_and_plixi = new Rule(PATTERN_LOCKERZ_AND_PLIXI, 0) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getLockerzAndPlixiImage(link, large_image_preview);
+			}
+		};
+		sRules.put("plixi.com", lockerz_and_plixi);
+		sRules.put("lockerz.com", lockerz_and_plixi);
+		sRules.put("twitgoo.com", new Rule(PATTERN_TWITGOO, TWITGOO_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getTwitgooImage(id, large_image_preview);
+			}
+		});
+		sRules.put("moby.to", new Rule(PATTERN_MOBYPICTURE, MOBYPICTURE_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getMobyPictureImage(id, large_image_preview);
+			}
+		});
+		sRules.put("photozou.jp", new Rule(PATTERN_PHOTOZOU, PHOTOZOU_GROUP_ID) {
+			@Override
+			ImageSpec getImageSpec(final String link, final String id, final boolean large_image_preview) {
+				return Utils.getPhotozouImage(id, large_image_preview);
+			}
+		});
+		sHosts = sRules.keySet().toArray(new String[sRules.size()]);
+	}
+
+	private ImageHostMatcher() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @return Image of the link, or null if link is not from any supported
+	 *         image hosting service.
+	 */
+	public static ImageSpec getImageSpec(final String link, final boolean large_image_preview) {
+		if (link == null) return null;
+		Entry entry;
+		synchronized (sCache) {
+			entry = sCache.get(link);
+		}
+		if (entry == null) {
+			entry = match(link);
+			synchronized (sCache) {
+				sCache.put(link, entry);
+			}
+		}
+		return large_image_preview ? entry.large : entry.small;
+	}
+
+	/**
+	 * Same as {@link #getImageSpec(String, boolean)} for link in
+	 * {@code str.substring(start, end)}, but link string is only created if
+	 * its host is an image hosting service.
+	 */
+	public static ImageSpec getImageSpec(final String str, final int start, final int end,
+			final boolean large_image_preview) {
+		if (str == null || start < 0 || end > str.length() || start >= end) return null;
+		if (getRule(str, start, end) == null) return null;
+		return getImageSpec(str.substring(start, end), large_image_preview);
+	}
+
+	/**
+	 * Finds rule by host name of the link in str, scheme is optional as in
+	 * {@link TwidereLinkify#AVAILABLE_URL_SCHEME_PREFIX}.
+	 */
+	private static Rule getRule(final String str, final int start, final int end) {
+		int host_start = start;
+		if (str.regionMatches(true, start, "http://", 0, 7)) {
+			host_start += 7;
+		} else if (str.regionMatches(true, start, "https://", 0, 8)) {
+			host_start += 8;
+		}
+		int host_end = host_start;
+		while (host_end < end && str.charAt(host_end) != '/') {
+			host_end++;
+		}
+		final int host_length = host_end - host_start;
+		for (final String host : sHosts) {
+			if (host.length() == host_length && str.regionMatches(true, host_start, host, 0, host_length))
+				return sRules.get(host);
+		}
+		if (endsWithIgnoreCase(str, host_start, host_end, ".sinaimg.cn")
+				|| endsWithIgnoreCase(str, host_start, host_end, ".sina.cn")) return RULE_SINA_WEIBO;
+		return null;
+	}
+
+	private static boolean endsWithIgnoreCase(final String str, final int start, final int end, final String suffix) {
+		final int length = suffix.length();
+		return end - start > length && str.regionMatches(true, end - length, suffix, 0, length);
+	}
+
+	/**
+	 * Links matching a pattern without a usable image id are treated as not
+	 * matched, so callers move on to the next link.
+	 */
+	private static Entry match(final String link) {
+		final Rule rule = getRule(link, 0, link.length());
+		if (rule == null) return NOT_MATCHED;
+		final Matcher m = rule.pattern.matcher(link);
+		if (!m.matches()) return NOT_MATCHED;
+		final String id = rule.group > 0 ? Utils.matcherGroup(m, rule.group) : null;
+		final ImageSpec large = rule.getImageSpec(link, id, true);
+		final ImageSpec small = rule.getImageSpec(link, id, false);
+		if (large == null || small == null) return NOT_MATCHED;
+		return new Entry(large, small);
+	}
+
+	private static final class Entry {
+
+		final ImageSpec large, small;
+
+		Entry(final ImageSpec large, final ImageSpec small) {
+			this.large = large;
+			this.small = small;
+		}
+	}
+
+	private static abstract class Rule {
+
+		final Pattern pattern;
+		final int group;
+
+		Rule(final Pattern pattern, final int group) {
+			this.pattern = pattern;
+			this.group = group;
+		}
+
+		abstract ImageSpec getImageSpec(String link, String id, boolean large_image_preview);
+	}
+}
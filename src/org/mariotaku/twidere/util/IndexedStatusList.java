@@ -0,0 +1,247 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.mariotaku.twidere.model.ParcelableStatus;
+
+/**
+ * Thread-safe list of statuses without duplicates, always sorted by status
+ * id in descending order (the natural order of {@link ParcelableStatus}).
+ * <p>
+ * Statuses are indexed by status id, so lookup is O(1), and insert and
+ * removal find their position by binary search instead of scanning the
+ * list. Positional {@code add} ignores the index and inserts the status in
+ * sorted position.
+ */
+public class IndexedStatusList extends AbstractList<ParcelableStatus> implements RandomAccess, Serializable {
+
+	private static final long serialVersionUID = 2873456207384462735L;
+
+	/**
+	 * Below this count statuses are inserted one by one, otherwise they are
+	 * appended and the whole list is sorted once.
+	 */
+	private static final int BULK_INSERT_THRESHOLD = 16;
+
+	private final ArrayList<ParcelableStatus> mList = new ArrayList<ParcelableStatus>();
+	private transient Map<Long, ParcelableStatus> mIndex = new HashMap<Long, ParcelableStatus>();
+
+	public IndexedStatusList() {
+	}
+
+	public IndexedStatusList(final Collection<? extends ParcelableStatus> collection) {
+		addAll(collection);
+	}
+
+	@Override
+	public synchronized void add(final int location, final ParcelableStatus status) {
+		add(status);
+	}
+
+	@Override
+	public synchronized boolean add(final ParcelableStatus status) {
+		if (status == null || mIndex.containsKey(status.status_id)) return false;
+		final int idx = searchStatusId(status.status_id);
+		mList.add(-idx - 1, status);
+		mIndex.put(status.status_id, status);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean addAll(final Collection<? extends ParcelableStatus> collection) {
+		if (collection == null || collection.isEmpty()) return false;
+		if (collection.size() < BULK_INSERT_THRESHOLD) {
+			boolean changed = false;
+			for (final ParcelableStatus status : collection) {
+				changed |= add(status);
+			}
+			return changed;
+		}
+		final int old_size = mList.size();
+		for (final ParcelableStatus status : collection.toArray(new ParcelableStatus[collection.size()])) {
+			if (status == null || mIndex.containsKey(status.status_id)) {
+				continue;
+			}
+			mList.add(status);
+			mIndex.put(status.status_id, status);
+		}
+		if (mList.size() == old_size) return false;
+		Collections.sort(mList);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean addAll(final int location, final Collection<? extends ParcelableStatus> collection) {
+		return addAll(collection);
+	}
+
+	@Override
+	public synchronized void clear() {
+		mList.clear();
+		mIndex.clear();
+		modCount++;
+	}
+
+	@Override
+	public synchronized boolean contains(final Object object) {
+		if (!(object instanceof ParcelableStatus)) return false;
+		final ParcelableStatus status = mIndex.get(((ParcelableStatus) object).status_id);
+		return status != null && status.equals(object);
+	}
+
+	public synchronized boolean containsStatusId(final long status_id) {
+		return mIndex.containsKey(status_id);
+	}
+
+	@Override
+	public synchronized ParcelableStatus get(final int location) {
+		return mList.get(location);
+	}
+
+	public synchronized ParcelableStatus getByStatusId(final long status_id) {
+		return mIndex.get(status_id);
+	}
+
+	@Override
+	public synchronized int indexOf(final Object object) {
+		if (!contains(object)) return -1;
+		return searchStatusId(((ParcelableStatus) object).status_id);
+	}
+
+	@Override
+	public synchronized int lastIndexOf(final Object object) {
+		return indexOf(object);
+	}
+
+	@Override
+	public synchronized ParcelableStatus remove(final int location) {
+		final ParcelableStatus status = mList.remove(location);
+		mIndex.remove(status.status_id);
+		modCount++;
+		return status;
+	}
+
+	@Override
+	public synchronized boolean remove(final Object object) {
+		final int idx = indexOf(object);
+		if (idx < 0) return false;
+		remove(idx);
+		return true;
+	}
+
+	/**
+	 * Removes all given statuses in a single pass.
+	 */
+	@Override
+	public synchronized boolean removeAll(final Collection<?> collection) {
+		if (collection == null || collection.isEmpty()) return false;
+		final Set<Long> ids = new HashSet<Long>();
+		for (final Object object : collection) {
+			if (contains(object)) {
+				ids.add(((ParcelableStatus) object).status_id);
+			}
+		}
+		if (ids.isEmpty()) return false;
+		final List<ParcelableStatus> retained = new ArrayList<ParcelableStatus>(mList.size() - ids.size());
+		for (final ParcelableStatus status : mList) {
+			if (ids.contains(status.status_id)) {
+				mIndex.remove(status.status_id);
+			} else {
+				retained.add(status);
+			}
+		}
+		mList.clear();
+		mList.addAll(retained);
+		modCount++;
+		return true;
+	}
+
+	public synchronized boolean removeStatusId(final long status_id) {
+		if (!mIndex.containsKey(status_id)) return false;
+		remove(searchStatusId(status_id));
+		return true;
+	}
+
+	/**
+	 * Replaces status with an updated copy of it, positions are determined
+	 * by status ids so they must be the same. Since the list is always
+	 * sorted, {@link Collections#sort(List)} only sets statuses in place.
+	 */
+	@Override
+	public synchronized ParcelableStatus set(final int location, final ParcelableStatus status) {
+		if (status == null) throw new NullPointerException();
+		final ParcelableStatus old = mList.get(location);
+		if (old.status_id != status.status_id)
+			throw new IllegalArgumentException("Status id " + status.status_id + " doesn't belong to location "
+					+ location);
+		mList.set(location, status);
+		mIndex.put(status.status_id, status);
+		return old;
+	}
+
+	@Override
+	public synchronized int size() {
+		return mList.size();
+	}
+
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		mIndex = new HashMap<Long, ParcelableStatus>();
+		for (final ParcelableStatus status : mList) {
+			mIndex.put(status.status_id, status);
+		}
+	}
+
+	/**
+	 * Binary search in descending order of status id.
+	 * 
+	 * @return Index of status if found, otherwise (-(insertion point) - 1).
+	 */
+	private int searchStatusId(final long status_id) {
+		int low = 0, high = mList.size() - 1;
+		while (low <= high) {
+			final int mid = low + high >>> 1;
+			final long mid_id = mList.get(mid).status_id;
+			if (mid_id > status_id) {
+				low = mid + 1;
+			} else if (mid_id < status_id) {
+				high = mid - 1;
+			} else
+				return mid;
+		}
+		return -(low + 1);
+	}
+}
@@ -0,0 +1,430 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import static org.mariotaku.gallery3d.common.Utils.crc64Long;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.util.Log;
+
+/**
+ * LRU file cache limited by total bytes and age of files.
+ * <p>
+ * Files are named by CRC64 of their keys, and written to a temporary file
+ * first, then renamed into place, so a partly written file is never seen as
+ * cached. Sizes and access times are appended to a journal, which is
+ * replayed when the cache is opened instead of listing the directory, and
+ * rewritten once it grows too large. Trimming and clearing run on a
+ * background thread.
+ */
+public class JournaledFileCache {
+
+	private static final String LOGTAG = JournaledFileCache.class.getSimpleName();
+
+	private static final String JOURNAL_FILE = "journal";
+	private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+	private static final String JOURNAL_VERSION = "1";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private static final char OP_WRITE = 'W', OP_READ = 'R', OP_DELETE = 'D';
+
+	private static final int JOURNAL_REBUILD_THRESHOLD = 2000;
+
+	private final File mDirectory;
+	private final long mMaxSize, mMaxAge;
+	private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+	private Writer mJournalWriter;
+	private boolean mLoaded;
+	private long mSize;
+	private int mJournalRedundantOps;
+	private boolean mTrimScheduled;
+
+	private final Runnable mTrimRunnable = new Runnable() {
+		@Override
+		public void run() {
+			trim();
+		}
+	};
+
+	/**
+	 * @param max_size Max total bytes of cached files
+	 * @param max_age Files not accessed in this time (milliseconds) will be
+	 *            removed, 0 means no limit
+	 */
+	public JournaledFileCache(final File directory, final long max_size, final long max_age) {
+		mDirectory = directory;
+		mMaxSize = max_size;
+		mMaxAge = max_age;
+		mExecutor.execute(mTrimRunnable);
+	}
+
+	/**
+	 * Removes all files in background, entries are forgotten immediately.
+	 */
+	public void clear() {
+		final String[] names;
+		synchronized (this) {
+			ensureLoaded();
+			names = mEntries.keySet().toArray(new String[mEntries.size()]);
+			mEntries.clear();
+			mSize = 0;
+			mJournalRedundantOps = 0;
+			rebuildJournal();
+		}
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (final String name : names) {
+					new File(mDirectory, name).delete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Moves temp file to its final location and records it in journal.
+	 *
+	 * @return Committed file, or null if failed.
+	 */
+	public File commit(final String key, final File temp_file) {
+		if (key == null || temp_file == null) return null;
+		final String name = getFileName(key);
+		final File file = new File(mDirectory, name);
+		final long length = temp_file.length();
+		synchronized (this) {
+			ensureLoaded();
+			if (length <= 0 || !temp_file.renameTo(file)) {
+				temp_file.delete();
+				return null;
+			}
+			final Entry previous = mEntries.put(name, new Entry(length, System.currentTimeMillis()));
+			if (previous != null) {
+				mSize -= previous.size;
+				mJournalRedundantOps++;
+			}
+			mSize += length;
+			appendJournal(OP_WRITE, name, length);
+			if (mSize > mMaxSize) {
+				mExecutor.execute(mTrimRunnable);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Creates an unique temp file in cache directory, caller should write to
+	 * it and call {@link #commit(String, File)}.
+	 */
+	public File createTempFile() throws IOException {
+		if (!mDirectory.exists()) {
+			mDirectory.mkdirs();
+		}
+		return File.createTempFile("cache", TEMP_FILE_SUFFIX, mDirectory);
+	}
+
+	/**
+	 * Returns cached file and marks it as recently used, or null if not
+	 * cached.
+	 */
+	public File get(final String key) {
+		if (key == null) return null;
+		final String name = getFileName(key);
+		synchronized (this) {
+			ensureLoaded();
+			final Entry entry = mEntries.get(name);
+			if (entry == null) return null;
+			final File file = new File(mDirectory, name);
+			if (!file.isFile()) {
+				mEntries.remove(name);
+				mSize -= entry.size;
+				appendJournal(OP_DELETE, name, 0);
+				return null;
+			}
+			entry.last_access = System.currentTimeMillis();
+			appendJournal(OP_READ, name, 0);
+			return file;
+		}
+	}
+
+	public File getDirectory() {
+		return mDirectory;
+	}
+
+	public synchronized long getSize() {
+		ensureLoaded();
+		return mSize;
+	}
+
+	public void remove(final String key) {
+		if (key == null) return;
+		final String name = getFileName(key);
+		synchronized (this) {
+			ensureLoaded();
+			final Entry entry = mEntries.remove(name);
+			if (entry == null) return;
+			mSize -= entry.size;
+			appendJournal(OP_DELETE, name, 0);
+		}
+		new File(mDirectory, name).delete();
+	}
+
+	/**
+	 * Journal lines are "W name size time", "R name time" and "D name". Reads
+	 * are not flushed immediately, losing some of them only makes LRU order
+	 * less accurate. Schedules a trim to rebuild journal once it has too many
+	 * redundant lines, even if cache isn't full. Must be called with lock
+	 * held.
+	 */
+	private void appendJournal(final char op, final String name, final long size) {
+		if (mJournalWriter == null) return;
+		try {
+			mJournalWriter.write(op + " " + name);
+			if (op == OP_WRITE) {
+				mJournalWriter.write(" " + size);
+			}
+			if (op != OP_DELETE) {
+				mJournalWriter.write(" " + System.currentTimeMillis());
+			}
+			mJournalWriter.write('\n');
+			if (op != OP_READ) {
+				mJournalWriter.flush();
+			}
+		} catch (final IOException e) {
+			Log.w(LOGTAG, e);
+			closeJournal();
+		}
+		if (op != OP_WRITE) {
+			mJournalRedundantOps++;
+		}
+		if (!mTrimScheduled && isJournalRedundant()) {
+			mTrimScheduled = true;
+			mExecutor.execute(mTrimRunnable);
+		}
+	}
+
+	private void closeJournal() {
+		if (mJournalWriter == null) return;
+		try {
+			mJournalWriter.close();
+		} catch (final IOException e) {
+			// Ignore.
+		}
+		mJournalWriter = null;
+	}
+
+	/**
+	 * Must be called with lock held.
+	 */
+	private void ensureLoaded() {
+		if (mLoaded) return;
+		mLoaded = true;
+		if (!mDirectory.exists()) {
+			mDirectory.mkdirs();
+		}
+		final File journal = new File(mDirectory, JOURNAL_FILE);
+		if (journal.isFile() && readJournal(journal)) {
+			try {
+				mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+			} catch (final IOException e) {
+				Log.w(LOGTAG, e);
+			}
+		} else {
+			// No valid journal, e.g. files written by previous versions,
+			// start over with an empty directory.
+			mEntries.clear();
+			mSize = 0;
+			final File[] files = mDirectory.listFiles();
+			if (files != null) {
+				for (final File file : files) {
+					file.delete();
+				}
+			}
+			rebuildJournal();
+		}
+		// Temp files left by interrupted writes.
+		final File[] temp_files = mDirectory.listFiles();
+		if (temp_files != null) {
+			for (final File file : temp_files) {
+				if (file.getName().endsWith(TEMP_FILE_SUFFIX) && !JOURNAL_FILE_TEMP.equals(file.getName())) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Must be called with lock held.
+	 */
+	private boolean isJournalRedundant() {
+		return mJournalRedundantOps >= JOURNAL_REBUILD_THRESHOLD && mJournalRedundantOps >= mEntries.size();
+	}
+
+	private boolean readJournal(final File journal) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(journal));
+			if (!JOURNAL_VERSION.equals(reader.readLine())) return false;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] segments = line.split(" ");
+				if (segments.length < 2 || segments[0].length() != 1) {
+					continue;
+				}
+				final String name = segments[1];
+				switch (segments[0].charAt(0)) {
+					case OP_WRITE: {
+						if (segments.length < 4) {
+							break;
+						}
+						final long size = Long.parseLong(segments[2]);
+						final Entry previous = mEntries.put(name, new Entry(size, Long.parseLong(segments[3])));
+						if (previous != null) {
+							mSize -= previous.size;
+							mJournalRedundantOps++;
+						}
+						mSize += size;
+						break;
+					}
+					case OP_READ: {
+						// Moves entry to the tail.
+						final Entry entry = mEntries.get(name);
+						if (entry != null && segments.length >= 3) {
+							entry.last_access = Long.parseLong(segments[2]);
+						}
+						mJournalRedundantOps++;
+						break;
+					}
+					case OP_DELETE: {
+						final Entry entry = mEntries.remove(name);
+						if (entry != null) {
+							mSize -= entry.size;
+						}
+						mJournalRedundantOps++;
+						break;
+					}
+				}
+			}
+			return true;
+		} catch (final IOException e) {
+			Log.w(LOGTAG, e);
+		} catch (final NumberFormatException e) {
+			Log.w(LOGTAG, e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (final IOException e) {
+					// Ignore.
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes current entries in LRU order to a new journal. Must be called
+	 * with lock held.
+	 */
+	private void rebuildJournal() {
+		closeJournal();
+		final File journal = new File(mDirectory, JOURNAL_FILE);
+		final File journal_temp = new File(mDirectory, JOURNAL_FILE_TEMP);
+		try {
+			final Writer writer = new BufferedWriter(new FileWriter(journal_temp));
+			try {
+				writer.write(JOURNAL_VERSION);
+				writer.write('\n');
+				for (final Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+					final Entry value = entry.getValue();
+					writer.write(OP_WRITE + " " + entry.getKey() + " " + value.size + " " + value.last_access + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+			if (!journal_temp.renameTo(journal)) throw new IOException("Unable to rename " + journal_temp);
+			mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+			mJournalRedundantOps = 0;
+		} catch (final IOException e) {
+			Log.w(LOGTAG, e);
+		}
+	}
+
+	/**
+	 * Removes least recently used files until total size fits, and files
+	 * not accessed for too long. Runs on background thread.
+	 */
+	private void trim() {
+		final List<String> removed = new ArrayList<String>();
+		synchronized (this) {
+			ensureLoaded();
+			final long expire_time = mMaxAge > 0 ? System.currentTimeMillis() - mMaxAge : 0;
+			final Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<String, Entry> eldest = it.next();
+				final Entry entry = eldest.getValue();
+				if (mSize <= mMaxSize && entry.last_access >= expire_time) {
+					break;
+				}
+				mSize -= entry.size;
+				removed.add(eldest.getKey());
+				it.remove();
+				appendJournal(OP_DELETE, eldest.getKey(), 0);
+			}
+			if (isJournalRedundant()) {
+				rebuildJournal();
+			}
+			mTrimScheduled = false;
+		}
+		for (final String name : removed) {
+			new File(mDirectory, name).delete();
+		}
+	}
+
+	private static String getFileName(final String key) {
+		return Long.toHexString(crc64Long(key));
+	}
+
+	private static final class Entry {
+
+		final long size;
+		long last_access;
+
+		Entry(final long size, final long last_access) {
+			this.size = size;
+			this.last_access = last_access;
+		}
+	}
+}
@@ -19,41 +19,38 @@
 
 package org.mariotaku.twidere.util;
 
-import static org.mariotaku.twidere.util.Utils.copyStream;
-import static org.mariotaku.twidere.util.Utils.getBestCacheDir;
 import static org.mariotaku.twidere.util.Utils.getImageLoaderHttpClient;
-import static org.mariotaku.twidere.util.Utils.getRedirectedHttpResponse;
 import static org.mariotaku.twidere.util.Utils.resizeBitmap;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.mariotaku.twidere.BuildConfig;
 import org.mariotaku.twidere.Constants;
 
-import twitter4j.TwitterException;
 import twitter4j.http.HttpClientWrapper;
-import twitter4j.http.HttpResponse;
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.GridView;
 import android.widget.ImageView;
@@ -74,14 +71,18 @@ public class LazyImageLoader implements Constants {
 
 	private static final String LOGTAG = LazyImageLoader.class.getSimpleName();
 	private static final int DELAY_BEFORE_PURGE = 40000;
+	private static final int THREADS_COUNT = 8;
 
 	private final ArrayList<String> mBlacklist;
 	private final MemoryCache mMemoryCache;
+	private final BitmapReusePool mBitmapPool;
 	private final Context mContext;
-	private final FileCache mFileCache;
+	private final MediaCache mMediaCache;
 	private final Map<ImageView, String> mImageViews = Collections
 			.synchronizedMap(new WeakHashMap<ImageView, String>());
-	private final ExecutorService mExecutor;
+	private final ThreadPoolExecutor mExecutor;
+	private final Map<String, ImageLoader> mPendingRequests = new HashMap<String, ImageLoader>();
+	private long mRequestSequence;
 	private final int mFallbackRes;
 	private final int mRequiredWidth, mRequiredHeight;
 	private final Handler mPurgeHandler;
@@ -89,17 +90,23 @@ public class LazyImageLoader implements Constants {
 
 	private HttpClientWrapper mClient;
 
-	public LazyImageLoader(final Context context, final String cache_dir_name, final int fallback_image_res,
-			final int required_width, final int required_height, final int mem_cache_capacity) {
+	/**
+	 * @param mem_cache_size Size of memory cache in bytes, a quarter of this
+	 *            size is used to keep evicted bitmaps for reuse.
+	 */
+	public LazyImageLoader(final Context context, final MediaCache media_cache, final int fallback_image_res,
+			final int required_width, final int required_height, final int mem_cache_size) {
 		if (DEBUG) {
-			Log.i(LOGTAG, "Initialized with capacity " + mem_cache_capacity);
+			Log.i(LOGTAG, "Initialized with size " + mem_cache_size);
 		}
 		mContext = context;
-		mMemoryCache = new MemoryCache(mem_cache_capacity);
-		mFileCache = new FileCache(context, cache_dir_name);
-		mExecutor = Executors.newFixedThreadPool(8, new LowerPriorityThreadFactory());
+		mMemoryCache = new MemoryCache(mem_cache_size);
+		mBitmapPool = new BitmapReusePool(mem_cache_size / 4);
+		mMediaCache = media_cache;
+		mExecutor = new ThreadPoolExecutor(THREADS_COUNT, THREADS_COUNT, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(16, new NewestFirstComparator()), new LowerPriorityThreadFactory());
 		mFallbackRes = fallback_image_res;
-		mPurgeHandler = new Handler();
+		mPurgeHandler = new Handler(Looper.getMainLooper());
 		mPurger = new MemoryPurger(this);
 		mBlacklist = new ArrayList<String>();
 		mRequiredWidth = required_width % 2 == 0 ? required_width : required_width + 1;
@@ -125,13 +132,13 @@ public class LazyImageLoader implements Constants {
 	}
 
 	public void clearFileCache() {
-		mFileCache.clear();
+		mMediaCache.clear();
 	}
 
 	public void clearMemoryCache() {
 		mMemoryCache.clear();
+		mBitmapPool.clear();
 		mBlacklist.clear();
-		System.gc();
 	}
 
 	public void displayImage(final ImageView view, final String url) {
@@ -140,7 +147,10 @@ public class LazyImageLoader implements Constants {
 			view.setImageResource(mFallbackRes);
 			return;
 		}
-		mImageViews.put(view, url);
+		final String previous_url = mImageViews.put(view, url);
+		if (previous_url != null && !previous_url.equals(url)) {
+			cancelIfUnused(previous_url);
+		}
 		final Bitmap bitmap = mMemoryCache.get(url);
 		if (bitmap != null) {
 			view.setImageBitmap(bitmap);
@@ -155,9 +165,8 @@ public class LazyImageLoader implements Constants {
 	}
 
 	public File getCachedImageFile(final String url) {
-		if (mFileCache == null) return null;
-		final File f = mFileCache.getFile(url);
-		if (f != null && f.exists())
+		final File f = mMediaCache.get(url);
+		if (f != null)
 			return f;
 		else {
 			queuePhoto(url, null);
@@ -212,9 +221,15 @@ public class LazyImageLoader implements Constants {
 			}
 			options.inSampleSize = widthFactor;
 			options.inJustDecodeBounds = false;
-			final Bitmap bitmap = resizeBitmap(BitmapFactory.decodeFile(filePath, options), mRequiredWidth,
-					mRequiredHeight);
-			if (bitmap != null) return bitmap;
+			final Bitmap decoded = decodeFile(filePath, options);
+			if (decoded != null) {
+				final Bitmap bitmap = resizeBitmap(decoded, mRequiredWidth, mRequiredHeight);
+				if (bitmap != decoded) {
+					// Decoded bitmap is only an intermediate buffer now.
+					mBitmapPool.put(decoded);
+				}
+				return bitmap;
+			}
 		} else {
 			if (file.isFile() && file.length() == 0) {
 				file.delete();
@@ -227,9 +242,61 @@ public class LazyImageLoader implements Constants {
 		return null;
 	}
 
+	/**
+	 * Decodes into a pooled bitmap if possible. Before KitKat bitmaps can be
+	 * reused only if they have exactly the same size and no sub-sampling is
+	 * needed, so we don't try otherwise.
+	 */
+	private Bitmap decodeFile(final String path, final BitmapFactory.Options options) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) return BitmapFactory.decodeFile(path, options);
+		final Bitmap reuse = options.inSampleSize == 1 ? mBitmapPool.get(options.outWidth, options.outHeight,
+				options.inPreferredConfig) : null;
+		return BitmapReuseAccessor.decodeFile(path, options, reuse);
+	}
+
+	/**
+	 * Called when bitmap is removed from memory cache. Bitmaps still shown by
+	 * any view must not be reused.
+	 */
+	private void onBitmapEvicted(final String url, final Bitmap bitmap) {
+		if (bitmap == null || mImageViews.containsValue(url)) return;
+		mBitmapPool.put(bitmap);
+	}
+
+	/**
+	 * Removes queued request if none of its views wants the image any more.
+	 */
+	private void cancelIfUnused(final String url) {
+		synchronized (mPendingRequests) {
+			final ImageLoader request = mPendingRequests.get(url);
+			if (request == null || request.started || !request.isUnused()) return;
+			if (mExecutor.remove(request)) {
+				mPendingRequests.remove(url);
+			}
+		}
+	}
+
+	/**
+	 * Requests for same URL are merged into one, and the latest requested
+	 * image is loaded first, as it's most likely to be on screen.
+	 */
 	private void queuePhoto(final String url, final ImageView imageview) {
+		if (url == null || mExecutor.isShutdown()) return;
 		final ImageToLoad p = new ImageToLoad(url, imageview);
-		mExecutor.submit(new ImageLoader(p));
+		synchronized (mPendingRequests) {
+			final ImageLoader pending = mPendingRequests.get(url);
+			if (pending != null) {
+				pending.addTarget(p);
+				if (!pending.started && mExecutor.getQueue().remove(pending)) {
+					pending.priority = ++mRequestSequence;
+					mExecutor.getQueue().add(pending);
+				}
+				return;
+			}
+			final ImageLoader request = new ImageLoader(p, ++mRequestSequence);
+			mPendingRequests.put(url, request);
+			mExecutor.execute(request);
+		}
 	}
 
 	/**
@@ -243,11 +310,16 @@ public class LazyImageLoader implements Constants {
 	} // Both hard and soft caches are purged after 40 seconds idling.
 
 	boolean imageViewReused(final ImageToLoad imagetoload) {
+		if (imagetoload.view == null) return true;
 		final Object tag = mImageViews.get(imagetoload.view);
 		if (tag == null || !tag.equals(imagetoload.source)) return true;
 		return false;
 	}
 
+	static int getBitmapSize(final Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
 	// Used to display bitmap in the UI thread
 	class BitmapDisplayer implements Runnable {
 
@@ -270,106 +342,172 @@ public class LazyImageLoader implements Constants {
 		}
 	}
 
-	static class FileCache {
+	static class BitmapReuseAccessor {
 
-		private final String mCacheDirName;
+		@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+		static Bitmap decodeFile(final String path, final BitmapFactory.Options options, final Bitmap reuse) {
+			options.inMutable = true;
+			options.inBitmap = reuse;
+			if (reuse == null) return BitmapFactory.decodeFile(path, options);
+			try {
+				return BitmapFactory.decodeFile(path, options);
+			} catch (final IllegalArgumentException e) {
+				// Decoded size doesn't match the bitmap to reuse.
+				options.inBitmap = null;
+				return BitmapFactory.decodeFile(path, options);
+			}
+		}
+	}
+
+	/**
+	 * Keeps bitmaps evicted from memory cache, grouped by dimensions and
+	 * config, so images of same size (e.g. profile images) can be decoded
+	 * into them. Oldest bitmaps are dropped when pool exceeds its size.
+	 */
+	static class BitmapReusePool {
 
-		private File mCacheDir;
-		private final Context mContext;
+		private final int mMaxSize;
+		private final Map<Long, LinkedList<Bitmap>> mBitmaps = new HashMap<Long, LinkedList<Bitmap>>();
+		private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>();
+		private int mSize;
 
-		public FileCache(final Context context, final String cache_dir_name) {
-			mContext = context;
-			mCacheDirName = cache_dir_name;
-			init();
+		BitmapReusePool(final int max_size) {
+			mMaxSize = max_size;
 		}
 
-		public void clear() {
-			if (mCacheDir == null) return;
-			final File[] files = mCacheDir.listFiles();
-			if (files == null) return;
-			for (final File f : files) {
-				f.delete();
-			}
+		public synchronized void clear() {
+			mBitmaps.clear();
+			mOrder.clear();
+			mSize = 0;
 		}
 
-		public File getFile(final String url) {
-			if (mCacheDir == null) return null;
-			final String filename = getStringFilename(url);
-			if (filename == null) return null;
-			final File file = new File(mCacheDir, filename);
-			return file;
+		public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+			final LinkedList<Bitmap> list = mBitmaps.get(getKey(width, height, config));
+			if (list == null || list.isEmpty()) return null;
+			final Bitmap bitmap = list.removeLast();
+			mOrder.remove(bitmap);
+			mSize -= getBitmapSize(bitmap);
+			return bitmap;
 		}
 
-		public void init() {
-			/* Find the dir to save cached images. */
-			mCacheDir = getBestCacheDir(mContext, mCacheDirName);
-			if (mCacheDir != null && !mCacheDir.exists()) {
-				mCacheDir.mkdirs();
+		public void put(final Bitmap bitmap) {
+			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || bitmap == null || !bitmap.isMutable()
+					|| bitmap.isRecycled()) return;
+			final int size = getBitmapSize(bitmap);
+			if (size > mMaxSize) return;
+			synchronized (this) {
+				final Long key = getKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+				LinkedList<Bitmap> list = mBitmaps.get(key);
+				if (list == null) {
+					list = new LinkedList<Bitmap>();
+					mBitmaps.put(key, list);
+				}
+				list.add(bitmap);
+				mOrder.add(bitmap);
+				mSize += size;
+				while (mSize > mMaxSize && !mOrder.isEmpty()) {
+					final Bitmap eldest = mOrder.removeFirst();
+					mBitmaps.get(getKey(eldest.getWidth(), eldest.getHeight(), eldest.getConfig())).remove(eldest);
+					mSize -= getBitmapSize(eldest);
+				}
 			}
 		}
 
-		private String getStringFilename(final String url) {
-			if (url == null) return null;
-			return url.replaceFirst("https?:\\/\\/", "").replaceAll("[^a-zA-Z0-9]", "_");
+		private static Long getKey(final int width, final int height, final Bitmap.Config config) {
+			final int config_ordinal = config != null ? config.ordinal() : Bitmap.Config.ARGB_8888.ordinal();
+			return (long) width << 32 | (long) height << 8 | config_ordinal;
 		}
-
 	}
 
 	class ImageLoader implements Runnable {
-		private final ImageToLoad imagetoload;
 
-		public ImageLoader(final ImageToLoad imagetoload) {
-			this.imagetoload = imagetoload;
+		private final String source;
+		private final List<ImageToLoad> targets = new ArrayList<ImageToLoad>();
+
+		/** Guarded by mPendingRequests. */
+		boolean started;
+		/** Guarded by mPendingRequests, larger value runs first. */
+		long priority;
+
+		public ImageLoader(final ImageToLoad imagetoload, final long priority) {
+			source = imagetoload.source;
+			targets.add(imagetoload);
+			this.priority = priority;
+		}
+
+		/**
+		 * Called with mPendingRequests held.
+		 */
+		void addTarget(final ImageToLoad imagetoload) {
+			for (final ImageToLoad target : targets) {
+				if (target.view == imagetoload.view) return;
+			}
+			targets.add(imagetoload);
 		}
 
 		public Bitmap getBitmap(final String url) {
 			if (url == null) return null;
-			final File cache_file = mFileCache.getFile(url);
-
-			// from SD cache
-			final Bitmap cached_bitmap = decodeFile(cache_file, url);
-			if (cached_bitmap != null) return cached_bitmap;
-
-			// from web
 			try {
-				final HttpResponse resp = getRedirectedHttpResponse(mClient, url);
-
-				if (resp != null && resp.getStatusCode() == 200) {
-					final InputStream is = resp.asStream();
-					final OutputStream os = new FileOutputStream(cache_file);
-					copyStream(is, os);
-					os.flush();
-					os.close();
-					final Bitmap bitmap = decodeFile(cache_file, url);
-					if (bitmap == null) {
-						// The file is corrupted, so we remove it from cache.
-						if (cache_file.isFile() && cache_file.length() == 0) {
-							cache_file.delete();
-						}
-					} else
-						return bitmap;
+				final File file = mMediaCache.download(url, mClient);
+				final Bitmap bitmap = decodeFile(file, url);
+				if (bitmap == null && file != null) {
+					// The file is corrupted, so we remove it from cache.
+					mMediaCache.remove(url);
 				}
-			} catch (final FileNotFoundException e) {
-				// Storage state may changed, so call FileCache.init() again.
-				Log.w(LOGTAG, e);
-				mFileCache.init();
+				return bitmap;
 			} catch (final IOException e) {
 				Log.w(LOGTAG, e);
-			} catch (final TwitterException e) {
-				Log.w(LOGTAG, e);
 			}
 			return null;
 		}
 
+		/**
+		 * Called with mPendingRequests held. Requests without view (e.g. from
+		 * {@link LazyImageLoader#getCachedImageFile(String)}) are never
+		 * unused.
+		 */
+		boolean isUnused() {
+			for (final ImageToLoad target : targets) {
+				if (target.view == null || !imageViewReused(target)) return false;
+			}
+			return true;
+		}
+
 		@Override
 		public void run() {
-			if (imageViewReused(imagetoload) || imagetoload.source == null) return;
-			final Bitmap bmp = getBitmap(imagetoload.source);
-			mMemoryCache.put(imagetoload.source, bmp);
-			if (imageViewReused(imagetoload)) return;
-			final BitmapDisplayer bd = new BitmapDisplayer(bmp, imagetoload);
-			final Activity a = (Activity) imagetoload.view.getContext();
-			a.runOnUiThread(bd);
+			synchronized (mPendingRequests) {
+				if (isUnused()) {
+					mPendingRequests.remove(source);
+					return;
+				}
+				started = true;
+			}
+			Bitmap bmp = null;
+			try {
+				bmp = getBitmap(source);
+				mMemoryCache.put(source, bmp);
+			} catch (final OutOfMemoryError e) {
+				// Targets will show fallback image.
+				Log.w(LOGTAG, e);
+			} finally {
+				// Otherwise later requests of this url would be merged into
+				// this one and never loaded.
+				synchronized (mPendingRequests) {
+					mPendingRequests.remove(source);
+				}
+			}
+			final ImageToLoad[] targets_array;
+			synchronized (mPendingRequests) {
+				targets_array = targets.toArray(new ImageToLoad[targets.size()]);
+			}
+			for (final ImageToLoad target : targets_array) {
+				if (imageViewReused(target)) {
+					continue;
+				}
+				final BitmapDisplayer bd = new BitmapDisplayer(bmp, target);
+				final Activity a = (Activity) target.view.getContext();
+				a.runOnUiThread(bd);
+			}
 		}
 	}
 
@@ -383,6 +521,15 @@ public class LazyImageLoader implements Constants {
 		}
 	}
 
+	static class NewestFirstComparator implements Comparator<Runnable> {
+
+		@Override
+		public int compare(final Runnable lhs, final Runnable rhs) {
+			final long lhs_priority = ((ImageLoader) lhs).priority, rhs_priority = ((ImageLoader) rhs).priority;
+			return lhs_priority > rhs_priority ? -1 : lhs_priority < rhs_priority ? 1 : 0;
+		}
+	}
+
 	static class LowerPriorityThreadFactory implements ThreadFactory {
 
 		@Override
@@ -394,78 +541,85 @@ public class LazyImageLoader implements Constants {
 
 	}
 
-	static class MemoryCache {
+	/**
+	 * Memory cache limited by bitmap bytes. Keys are spread over several
+	 * access-ordered maps with their own locks, so loader threads and UI
+	 * thread rarely wait for each other. Each stripe evicts its least recently
+	 * used bitmaps when it exceeds its share of the size.
+	 */
+	class MemoryCache {
+
+		private static final int STRIPES_COUNT = 4;
 
-		private final Map<String, SoftReference<Bitmap>> mSoftCache;
-		private final LinkedHashMap<String, Bitmap> mHardCache;
+		private final Stripe[] mStripes = new Stripe[STRIPES_COUNT];
 
-		public MemoryCache(final int max_capacity) {
-			mSoftCache = new HashMap<String, SoftReference<Bitmap>>(max_capacity / 2);
-			mHardCache = new HardBitmapCache(mSoftCache, max_capacity / 2);
+		MemoryCache(final int max_size) {
+			for (int i = 0; i < STRIPES_COUNT; i++) {
+				mStripes[i] = new Stripe(max_size / STRIPES_COUNT);
+			}
 		}
 
 		public void clear() {
-			mHardCache.clear();
-			mSoftCache.clear();
+			for (final Stripe stripe : mStripes) {
+				synchronized (stripe) {
+					stripe.clear();
+					stripe.size = 0;
+				}
+			}
 		}
 
 		public Bitmap get(final String key) {
 			if (key == null) return null;
-			synchronized (mHardCache) {
-				final Bitmap bitmap = mHardCache.get(key);
-				if (bitmap != null) {
-					// Put bitmap on top of cache so it's purged last.
-					mHardCache.remove(key);
-					mHardCache.put(key, bitmap);
-					return bitmap;
-				}
+			final Stripe stripe = getStripe(key);
+			synchronized (stripe) {
+				return stripe.get(key);
 			}
+		}
 
-			final Reference<Bitmap> bitmapRef = mSoftCache.get(key);
-			if (bitmapRef != null) {
-				final Bitmap bitmap = bitmapRef.get();
-				if (bitmap != null)
-					return bitmap;
-				else {
-					// Must have been collected by the Garbage Collector
-					// so we remove the bucket from the cache.
-					mSoftCache.remove(key);
+		public void put(final String key, final Bitmap bitmap) {
+			if (key == null || bitmap == null) return;
+			final Stripe stripe = getStripe(key);
+			final List<String> evicted_keys = new ArrayList<String>();
+			final List<Bitmap> evicted_bitmaps = new ArrayList<Bitmap>();
+			synchronized (stripe) {
+				final Bitmap previous = stripe.put(key, bitmap);
+				stripe.size += getBitmapSize(bitmap);
+				if (previous != null) {
+					stripe.size -= getBitmapSize(previous);
+				}
+				final Iterator<Map.Entry<String, Bitmap>> it = stripe.entrySet().iterator();
+				while (stripe.size > stripe.max_size && it.hasNext()) {
+					final Map.Entry<String, Bitmap> eldest = it.next();
+					if (eldest.getValue() == bitmap) {
+						continue;
+					}
+					stripe.size -= getBitmapSize(eldest.getValue());
+					evicted_keys.add(eldest.getKey());
+					evicted_bitmaps.add(eldest.getValue());
+					it.remove();
 				}
 			}
-
-			// Could not locate the bitmap in any of the caches, so we return
-			// null.
-			return null;
-
+			for (int i = 0, j = evicted_keys.size(); i < j; i++) {
+				onBitmapEvicted(evicted_keys.get(i), evicted_bitmaps.get(i));
+			}
 		}
 
-		public void put(final String key, final Bitmap bitmap) {
-			if (key == null || bitmap == null) return;
-			mHardCache.put(key, bitmap);
+		private Stripe getStripe(final String key) {
+			return mStripes[(key.hashCode() & 0x7fffffff) % STRIPES_COUNT];
 		}
 
-		static class HardBitmapCache extends LinkedHashMap<String, Bitmap> {
+	}
 
-			/***/
-			private static final long serialVersionUID = 1347795807259717646L;
-			private final Map<String, SoftReference<Bitmap>> soft_cache;
-			private final int capacity;
+	static class Stripe extends LinkedHashMap<String, Bitmap> {
 
-			HardBitmapCache(final Map<String, SoftReference<Bitmap>> soft_cache, final int capacity) {
-				super(capacity);
-				this.soft_cache = soft_cache;
-				this.capacity = capacity;
-			}
+		private static final long serialVersionUID = -2592475410452736513L;
 
-			@Override
-			protected boolean removeEldestEntry(final LinkedHashMap.Entry<String, Bitmap> eldest) {
-				// Moves the last used item in the hard cache to the soft cache.
-				if (size() > capacity) {
-					soft_cache.put(eldest.getKey(), new SoftReference<Bitmap>(eldest.getValue()));
-					return true;
-				} else
-					return false;
-			}
+		final int max_size;
+		int size;
+
+		Stripe(final int max_size) {
+			super(16, 0.75f, true);
+			this.max_size = max_size;
 		}
 	}
 
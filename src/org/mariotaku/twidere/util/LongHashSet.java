@@ -0,0 +1,112 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+/**
+ * Set of primitive longs with open addressing, avoids boxing every id into a
+ * {@link Long}. Removal is not supported.
+ */
+public final class LongHashSet {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] mKeys;
+	private boolean[] mUsed;
+	private int mSize;
+
+	public LongHashSet() {
+		this(16);
+	}
+
+	public LongHashSet(final int capacity) {
+		int length = 2;
+		while (length * LOAD_FACTOR < capacity) {
+			length <<= 1;
+		}
+		mKeys = new long[length];
+		mUsed = new boolean[length];
+	}
+
+	/**
+	 * @return true if value was not in this set.
+	 */
+	public boolean add(final long value) {
+		if (mSize + 1 > mKeys.length * LOAD_FACTOR) {
+			resize(mKeys.length << 1);
+		}
+		final int idx = indexOf(mKeys, mUsed, value);
+		if (mUsed[idx]) return false;
+		mKeys[idx] = value;
+		mUsed[idx] = true;
+		mSize++;
+		return true;
+	}
+
+	public boolean contains(final long value) {
+		return mUsed[indexOf(mKeys, mUsed, value)];
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public long[] toArray() {
+		final long[] array = new long[mSize];
+		for (int i = 0, j = 0, length = mKeys.length; i < length; i++) {
+			if (mUsed[i]) {
+				array[j++] = mKeys[i];
+			}
+		}
+		return array;
+	}
+
+	private void resize(final int length) {
+		final long[] keys = new long[length];
+		final boolean[] used = new boolean[length];
+		for (int i = 0, j = mKeys.length; i < j; i++) {
+			if (!mUsed[i]) {
+				continue;
+			}
+			final int idx = indexOf(keys, used, mKeys[i]);
+			keys[idx] = mKeys[i];
+			used[idx] = true;
+		}
+		mKeys = keys;
+		mUsed = used;
+	}
+
+	/**
+	 * Returns slot of value, or the empty slot it should be put in.
+	 */
+	private static int indexOf(final long[] keys, final boolean[] used, final long value) {
+		final int mask = keys.length - 1;
+		long hash = value * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 32;
+		int idx = (int) hash & mask;
+		while (used[idx] && keys[idx] != value) {
+			idx = idx + 1 & mask;
+		}
+		return idx;
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import static org.mariotaku.twidere.util.Utils.getBestCacheDir;
+import static org.mariotaku.twidere.util.Utils.getRedirectedHttpResponse;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+import org.mariotaku.twidere.Constants;
+
+import twitter4j.TwitterException;
+import twitter4j.http.HttpClientWrapper;
+import twitter4j.http.HttpResponse;
+import android.content.Context;
+import android.support.v4.util.LruCache;
+
+/**
+ * Cache of downloaded media shared by image loaders and image viewers, so
+ * an image is downloaded and stored only once.
+ * <p>
+ * Files are addressed by CRC64 of their URLs and kept in a single
+ * {@link JournaledFileCache}, so all media share one size limit. Concurrent
+ * downloads of the same URL are merged into one. A preview of an image can
+ * be linked to its original, so a viewer can show the cached preview while
+ * the original is being downloaded. Links are kept in memory only, so they
+ * work within the current process.
+ */
+public class MediaCache implements Constants {
+
+	private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+	private static final int MAX_PREVIEW_LINKS = 256;
+
+	private final Context mContext;
+	private final long mMaxSize;
+	private final HashMap<String, Download> mDownloads = new HashMap<String, Download>();
+	private final LruCache<String, String> mPreviews = new LruCache<String, String>(MAX_PREVIEW_LINKS);
+
+	private volatile JournaledFileCache mCache;
+
+	/**
+	 * @param max_size Max total bytes of cached media
+	 */
+	public MediaCache(final Context context, final long max_size) {
+		mContext = context;
+		mMaxSize = max_size;
+		init();
+	}
+
+	public void clear() {
+		final JournaledFileCache cache = mCache;
+		if (cache == null) return;
+		cache.clear();
+	}
+
+	/**
+	 * Returns cached file of url, or downloads it. If the same url is being
+	 * downloaded by another thread, waits for that download instead of
+	 * starting a new one. Interrupting calling thread cancels the download
+	 * with an {@link InterruptedIOException}.
+	 * 
+	 * @return Cached file, or null if server didn't return the media.
+	 */
+	public File download(final String url, final HttpClientWrapper client) throws IOException {
+		if (url == null) return null;
+		final Download download = new Download();
+		while (true) {
+			final File cached_file = get(url);
+			if (cached_file != null) return cached_file;
+			final Download pending;
+			synchronized (mDownloads) {
+				pending = mDownloads.get(url);
+				if (pending == null) {
+					mDownloads.put(url, download);
+				}
+			}
+			if (pending == null) {
+				break;
+			}
+			try {
+				return pending.await();
+			} catch (final InterruptedIOException e) {
+				if (Thread.currentThread().isInterrupted()) throw e;
+				// Download was cancelled by the thread started it, start
+				// again by ourselves.
+			}
+		}
+		File file = null;
+		IOException exception = null;
+		try {
+			// Download of the same url may finish just before we start.
+			file = get(url);
+			if (file == null) {
+				file = fetch(url, client);
+			}
+			return file;
+		} catch (final IOException e) {
+			exception = e;
+			throw e;
+		} finally {
+			synchronized (mDownloads) {
+				mDownloads.remove(url);
+			}
+			download.finish(file, exception);
+		}
+	}
+
+	/**
+	 * @return Cached file, or null if not cached.
+	 */
+	public File get(final String url) {
+		final JournaledFileCache cache = mCache;
+		if (cache == null || url == null) return null;
+		return cache.get(url);
+	}
+
+	/**
+	 * Returns cached preview of an image linked by
+	 * {@link #putPreview(String, String)} in this process, original itself is
+	 * not checked.
+	 * 
+	 * @return Cached file of the preview, or null if it's not cached.
+	 */
+	public File getCachedPreview(final String original_url) {
+		if (original_url == null) return null;
+		return get(mPreviews.get(original_url));
+	}
+
+	/**
+	 * Finds the best cache directory again, should be called if storage
+	 * state changed.
+	 */
+	public synchronized void init() {
+		final File cache_dir = getBestCacheDir(mContext, DIR_NAME_MEDIA);
+		if (cache_dir == null) {
+			mCache = null;
+			return;
+		}
+		if (mCache != null && cache_dir.equals(mCache.getDirectory())) return;
+		mCache = new JournaledFileCache(cache_dir, mMaxSize, MAX_AGE);
+	}
+
+	/**
+	 * Reads journal of the cache, so first lookup won't wait for it. Should
+	 * be called off the UI thread.
+	 */
+	public void preload() {
+		final JournaledFileCache cache = mCache;
+		if (cache == null) return;
+		cache.getSize();
+	}
+
+	/**
+	 * Links preview of an image to its original.
+	 */
+	public void putPreview(final String original_url, final String preview_url) {
+		if (original_url == null || preview_url == null || original_url.equals(preview_url)) return;
+		mPreviews.put(original_url, preview_url);
+	}
+
+	public void remove(final String url) {
+		final JournaledFileCache cache = mCache;
+		if (cache == null || url == null) return;
+		cache.remove(url);
+	}
+
+	private File fetch(final String url, final HttpClientWrapper client) throws IOException {
+		final JournaledFileCache cache = mCache;
+		if (cache == null) throw new FileNotFoundException("Cache directory is not available");
+		File temp_file = null;
+		try {
+			final HttpResponse resp = getRedirectedHttpResponse(client, url);
+			if (resp == null || resp.getStatusCode() != 200) return null;
+			// Download to a temp file first, so other threads never see a
+			// partly written file.
+			temp_file = cache.createTempFile();
+			final InputStream is = resp.asStream();
+			final OutputStream os = new FileOutputStream(temp_file);
+			try {
+				final byte[] buffer = new byte[8192];
+				int count;
+				while ((count = is.read(buffer)) != -1) {
+					if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+					os.write(buffer, 0, count);
+				}
+				os.flush();
+			} finally {
+				os.close();
+			}
+			final File file = cache.commit(url, temp_file);
+			temp_file = null;
+			return file;
+		} catch (final FileNotFoundException e) {
+			// Storage state may be changed.
+			init();
+			throw e;
+		} catch (final TwitterException e) {
+			final IOException exception = new IOException(e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		} finally {
+			if (temp_file != null) {
+				temp_file.delete();
+			}
+		}
+	}
+
+	private static final class Download {
+
+		private boolean mFinished;
+		private File mFile;
+		private IOException mException;
+
+		synchronized File await() throws IOException {
+			while (!mFinished) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					// Keep the flag, so caller knows it's cancelled itself.
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			if (mException != null) throw mException;
+			return mFile;
+		}
+
+		synchronized void finish(final File file, final IOException exception) {
+			mFile = file;
+			mException = exception;
+			mFinished = true;
+			notifyAll();
+		}
+	}
+}
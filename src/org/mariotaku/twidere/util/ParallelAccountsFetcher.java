@@ -0,0 +1,129 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import twitter4j.Twitter;
+import twitter4j.conf.Configuration;
+import android.net.Uri;
+
+/**
+ * Runs one request per account concurrently, at most
+ * {@link #MAX_CONCURRENT_REQUESTS_PER_HOST} requests are sent to the same API
+ * host at a time. Results are returned in the order of account ids.
+ */
+public abstract class ParallelAccountsFetcher<T> {
+
+	public static final int MAX_CONCURRENT_REQUESTS_PER_HOST = 4;
+
+	private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+	private static final Map<String, Semaphore> sHostPermits = new HashMap<String, Semaphore>();
+
+	/**
+	 * Called on worker thread, returns result for the account, or null if
+	 * nothing should be added to the result list.
+	 */
+	public abstract T fetch(Twitter twitter, long account_id, int idx);
+
+	public final List<T> fetchAll(final long[] account_ids) {
+		final List<T> result = new ArrayList<T>();
+		if (account_ids == null) return result;
+		final int length = account_ids.length;
+		if (length == 1) {
+			final T item = fetchWithPermit(account_ids[0], 0);
+			if (item != null) {
+				result.add(item);
+			}
+			return result;
+		}
+		final List<Future<T>> futures = new ArrayList<Future<T>>(length);
+		for (int i = 0; i < length; i++) {
+			final long account_id = account_ids[i];
+			final int idx = i;
+			futures.add(sExecutor.submit(new Callable<T>() {
+				@Override
+				public T call() {
+					return fetchWithPermit(account_id, idx);
+				}
+			}));
+		}
+		for (final Future<T> future : futures) {
+			try {
+				final T item = future.get();
+				if (item != null) {
+					result.add(item);
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (final Future<T> f : futures) {
+					f.cancel(true);
+				}
+				break;
+			} catch (final ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		return result;
+	}
+
+	public abstract Twitter getTwitter(long account_id);
+
+	private T fetchWithPermit(final long account_id, final int idx) {
+		final Twitter twitter = getTwitter(account_id);
+		if (twitter == null) return null;
+		final Semaphore permit = getHostPermit(twitter);
+		try {
+			permit.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		try {
+			return fetch(twitter, account_id, idx);
+		} finally {
+			permit.release();
+		}
+	}
+
+	private static Semaphore getHostPermit(final Twitter twitter) {
+		final Configuration conf = twitter.getConfiguration();
+		final String url = conf != null ? conf.getRestBaseURL() : null;
+		final String host = url != null ? Uri.parse(url).getHost() : null;
+		final String key = host != null ? host : "";
+		synchronized (sHostPermits) {
+			Semaphore permit = sHostPermits.get(key);
+			if (permit == null) {
+				permit = new Semaphore(MAX_CONCURRENT_REQUESTS_PER_HOST);
+				sHostPermits.put(key, permit);
+			}
+			return permit;
+		}
+	}
+}
@@ -21,6 +21,10 @@ package org.mariotaku.twidere.util;
 
 import static org.mariotaku.twidere.util.Utils.getBestCacheDir;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,6 +34,14 @@ import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mariotaku.twidere.model.ParcelableStatus;
 
 import android.content.Context;
 
@@ -39,6 +51,15 @@ public class SerializationUtil {
 	public static final String FILE_MODE_R = "r";
 	public static final String SERIALIZATION_CACHE_DIR = "serialization_cache";
 
+	/**
+	 * Statuses snapshot format: magic, version, state flag and value, count,
+	 * then each status prefixed with its length in bytes. Readers skip to
+	 * the end of each record, so fields can be appended to records without
+	 * changing version.
+	 */
+	private static final int STATUSES_SNAPSHOT_MAGIC = 0x54575354; // "TWST"
+	private static final int STATUSES_SNAPSHOT_VERSION = 1;
+
 	public static String getSerializationFilePath(final Context context, final Object... args) {
 		if (context == null || args == null || args.length == 0) return null;
 		final File cache_dir = getBestCacheDir(context, SERIALIZATION_CACHE_DIR);
@@ -72,6 +93,60 @@ public class SerializationUtil {
 		}
 	}
 
+	/**
+	 * Reads string written by {@link #writeString(DataOutput, String)}.
+	 */
+	public static String readString(final ByteBuffer in) throws IOException {
+		final int length = in.getInt();
+		if (length < 0) return null;
+		if (length > in.remaining()) throw new IOException("Invalid string length " + length);
+		final byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Reads statuses snapshot written by
+	 * {@link #writeStatuses(List, Long, String)} through a memory mapped
+	 * buffer.
+	 * 
+	 * @throws IOException if file doesn't exist, or is not a valid snapshot
+	 *             of current version.
+	 */
+	public static SynchronizedStateSavedList<ParcelableStatus, Long> readStatuses(final String path)
+			throws IOException {
+		if (path == null) return null;
+		final RandomAccessFile raf = new RandomAccessFile(path, FILE_MODE_R);
+		try {
+			final FileChannel channel = raf.getChannel();
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != STATUSES_SNAPSHOT_MAGIC) throw new IOException("Not a statuses snapshot");
+			if (buffer.getInt() != STATUSES_SNAPSHOT_VERSION) throw new IOException("Unsupported snapshot version");
+			final boolean has_state = buffer.get() != 0;
+			final long state = buffer.getLong();
+			final int count = buffer.getInt();
+			if (count < 0) throw new IOException("Invalid count " + count);
+			final List<ParcelableStatus> statuses = new ArrayList<ParcelableStatus>(count);
+			for (int i = 0; i < count; i++) {
+				final int length = buffer.getInt();
+				final int end = buffer.position() + length;
+				if (length < 0 || end > buffer.limit()) throw new IOException("Invalid record length " + length);
+				statuses.add(new ParcelableStatus(buffer));
+				buffer.position(end);
+			}
+			final SynchronizedStateSavedList<ParcelableStatus, Long> result = new SynchronizedStateSavedList<ParcelableStatus, Long>(
+					new IndexedStatusList(statuses), true);
+			if (has_state) {
+				result.setState(state);
+			}
+			return result;
+		} catch (final BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot");
+		} finally {
+			raf.close();
+		}
+	}
+
 	public static void write(final Object object, final String path) throws IOException {
 		if (object == null || path == null) return;
 		ObjectOutputStream os = null;
@@ -87,4 +162,53 @@ public class SerializationUtil {
 		}
 	}
 
+	/**
+	 * Writes string as length in bytes and UTF-8 bytes, -1 for null.
+	 */
+	public static void writeString(final DataOutput out, final String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = string.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes statuses in binary snapshot format, to a temporary file first so
+	 * readers never see a partly written snapshot.
+	 * 
+	 * @param state Optional state saved with statuses, e.g. last viewed id.
+	 */
+	public static void writeStatuses(final List<ParcelableStatus> statuses, final Long state, final String path)
+			throws IOException {
+		if (statuses == null || path == null) return;
+		final ParcelableStatus[] array = statuses.toArray(new ParcelableStatus[statuses.size()]);
+		final File file = new File(path), temp_file = new File(path + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp_file)));
+		try {
+			out.writeInt(STATUSES_SNAPSHOT_MAGIC);
+			out.writeInt(STATUSES_SNAPSHOT_VERSION);
+			out.writeByte(state != null ? 1 : 0);
+			out.writeLong(state != null ? state : 0);
+			out.writeInt(array.length);
+			final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+			final DataOutputStream record_out = new DataOutputStream(record);
+			for (final ParcelableStatus status : array) {
+				record.reset();
+				status.writeTo(record_out);
+				record_out.flush();
+				out.writeInt(record.size());
+				record.writeTo(out);
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp_file.renameTo(file)) {
+			temp_file.delete();
+			throw new IOException("Unable to rename " + temp_file);
+		}
+	}
+
 }
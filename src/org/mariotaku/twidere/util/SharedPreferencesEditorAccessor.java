@@ -0,0 +1,48 @@
+/*
+ *				Twidere - Twitter client for Android
+ * 
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+public final class SharedPreferencesEditorAccessor {
+
+	/**
+	 * Writes changes asynchronously where supported, commits them on older
+	 * platforms.
+	 */
+	public static void apply(final SharedPreferences.Editor editor) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			ApplyAccessorGingerbread.apply(editor);
+		} else {
+			editor.commit();
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+	private static class ApplyAccessorGingerbread {
+
+		@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+		private static void apply(final SharedPreferences.Editor editor) {
+			editor.apply();
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.mariotaku.twidere.Constants;
+import org.mariotaku.twidere.model.ParcelableStatus;
+import org.mariotaku.twidere.provider.TweetStore.Filters;
+import org.mariotaku.twidere.provider.TweetStore.Statuses;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Immutable snapshot of filter tables, compiled so a status can be checked
+ * without touching database. Keywords and links are matched with an
+ * Aho-Corasick automaton, users and sources are looked up in hash sets. All
+ * comparisons are case insensitive.
+ */
+public final class StatusFilter implements Constants {
+
+	private static StatusFilter sInstance;
+
+	private final KeywordsMatcher mKeywords, mLinks;
+	private final Set<String> mUsers, mSources;
+
+	private StatusFilter(final List<String> keywords, final List<String> links, final Set<String> users,
+			final Set<String> sources) {
+		mKeywords = keywords.isEmpty() ? null : new KeywordsMatcher(keywords);
+		mLinks = links.isEmpty() ? null : new KeywordsMatcher(links);
+		mUsers = users;
+		mSources = sources;
+	}
+
+	public boolean isEmpty() {
+		return mKeywords == null && mLinks == null && mUsers.isEmpty() && mSources.isEmpty();
+	}
+
+	public boolean isFiltered(final ContentValues values) {
+		if (values == null) return false;
+		final String text_plain = values.getAsString(Statuses.TEXT_PLAIN);
+		final String screen_name = values.getAsString(Statuses.SCREEN_NAME);
+		final String source = values.getAsString(Statuses.SOURCE);
+		if (!values.containsKey(Statuses.URLS))
+			return isFiltered(text_plain, values.getAsString(Statuses.TEXT), screen_name, source);
+		// Links are already extracted, no need to parse html.
+		if (isFiltered(text_plain, null, screen_name, source)) return true;
+		final String urls = values.getAsString(Statuses.URLS);
+		return urls != null && mLinks != null && mLinks.find(urls, 0, urls.length());
+	}
+
+	public boolean isFiltered(final ParcelableStatus status) {
+		if (status == null) return false;
+		return isFiltered(status.text_plain, status.text_html, status.screen_name, status.source);
+	}
+
+	public boolean isFiltered(final String text_plain, final String text_html, final String screen_name,
+			final String source) {
+		if (screen_name != null && !mUsers.isEmpty() && mUsers.contains(screen_name.toLowerCase(Locale.US)))
+			return true;
+		if (source != null && !mSources.isEmpty() && mSources.contains(getSourceName(source))) return true;
+		if (text_plain != null && mKeywords != null && mKeywords.find(text_plain, 0, text_plain.length()))
+			return true;
+		if (text_html != null && mLinks != null && isLinkFiltered(text_html)) return true;
+		return false;
+	}
+
+	/**
+	 * Matches filtered links against href values and texts of anchors.
+	 */
+	private boolean isLinkFiltered(final String html) {
+		final HtmlLinkExtractor extractor = new HtmlLinkExtractor(html);
+		while (extractor.find()) {
+			if (mLinks.find(html, extractor.linkStart(), extractor.linkEnd())) return true;
+			if (mLinks.find(html, extractor.textStart(), extractor.textEnd())) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns shared snapshot of current filters, tables are only read again
+	 * after {@link #invalidate()}.
+	 */
+	public static synchronized StatusFilter getInstance(final SQLiteDatabase database) {
+		if (sInstance == null) {
+			sInstance = load(database);
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Drops shared snapshot, should be called when filter tables changed.
+	 */
+	public static synchronized void invalidate() {
+		sInstance = null;
+	}
+
+	public static StatusFilter load(final SQLiteDatabase database) {
+		final List<String> keywords = new ArrayList<String>(), links = new ArrayList<String>();
+		final Set<String> users = new HashSet<String>(), sources = new HashSet<String>();
+		if (database != null) {
+			loadFilters(database, TABLE_FILTERED_KEYWORDS, keywords);
+			loadFilters(database, TABLE_FILTERED_LINKS, links);
+			loadFilters(database, TABLE_FILTERED_USERS, users);
+			loadFilters(database, TABLE_FILTERED_SOURCES, sources);
+		}
+		return new StatusFilter(keywords, links, users, sources);
+	}
+
+	/**
+	 * Returns lower cased text of the anchor in source html, or the whole
+	 * source if it's not a link (e.g. "web").
+	 */
+	private static String getSourceName(final String source) {
+		final int end = source.lastIndexOf("</a>");
+		if (end > 0) {
+			final int start = source.lastIndexOf('>', end);
+			if (start >= 0) return source.substring(start + 1, end).toLowerCase(Locale.US);
+		}
+		return source.toLowerCase(Locale.US);
+	}
+
+	private static void loadFilters(final SQLiteDatabase database, final String table, final Collection<String> out) {
+		final Cursor cur = database.query(table, new String[] { Filters.TEXT }, null, null, null, null, null);
+		if (cur == null) return;
+		try {
+			cur.moveToFirst();
+			while (!cur.isAfterLast()) {
+				final String text = cur.getString(0);
+				if (text != null && text.length() > 0) {
+					out.add(text.toLowerCase(Locale.US));
+				}
+				cur.moveToNext();
+			}
+		} finally {
+			cur.close();
+		}
+	}
+
+	/**
+	 * Aho-Corasick automaton, finds whether any of the keywords appears in
+	 * text in a single pass.
+	 */
+	private static final class KeywordsMatcher {
+
+		private final Node mRoot = new Node();
+
+		KeywordsMatcher(final List<String> keywords) {
+			for (final String keyword : keywords) {
+				Node node = mRoot;
+				for (int i = 0, j = keyword.length(); i < j; i++) {
+					final char c = keyword.charAt(i);
+					Node next = node.get(c);
+					if (next == null) {
+						next = node.put(c);
+					}
+					node = next;
+				}
+				node.matched = true;
+			}
+			// Build failure links in breadth-first order.
+			final LinkedList<Node> queue = new LinkedList<Node>();
+			for (int i = 0; i < mRoot.size; i++) {
+				final Node child = mRoot.children[i];
+				child.fail = mRoot;
+				queue.add(child);
+			}
+			while (!queue.isEmpty()) {
+				final Node node = queue.removeFirst();
+				for (int i = 0; i < node.size; i++) {
+					final char c = node.keys[i];
+					final Node child = node.children[i];
+					Node fail = node.fail;
+					while (fail != mRoot && fail.get(c) == null) {
+						fail = fail.fail;
+					}
+					final Node target = fail.get(c);
+					child.fail = target != null ? target : mRoot;
+					child.matched |= child.fail.matched;
+					queue.add(child);
+				}
+			}
+		}
+
+		boolean find(final String text, final int start, final int end) {
+			Node node = mRoot;
+			for (int i = start; i < end; i++) {
+				final char c = Character.toLowerCase(text.charAt(i));
+				Node next = node.get(c);
+				while (next == null && node != mRoot) {
+					node = node.fail;
+					next = node.get(c);
+				}
+				node = next != null ? next : mRoot;
+				if (node.matched) return true;
+			}
+			return false;
+		}
+
+		private static final class Node {
+
+			char[] keys = new char[2];
+			Node[] children = new Node[2];
+			int size;
+			Node fail;
+			boolean matched;
+
+			Node get(final char c) {
+				for (int i = 0; i < size; i++) {
+					if (keys[i] == c) return children[i];
+				}
+				return null;
+			}
+
+			Node put(final char c) {
+				if (size == keys.length) {
+					final char[] new_keys = new char[size * 2];
+					final Node[] new_children = new Node[size * 2];
+					System.arraycopy(keys, 0, new_keys, 0, size);
+					System.arraycopy(children, 0, new_children, 0, size);
+					keys = new_keys;
+					children = new_children;
+				}
+				final Node node = new Node();
+				keys[size] = c;
+				children[size] = node;
+				size++;
+				return node;
+			}
+		}
+	}
+}
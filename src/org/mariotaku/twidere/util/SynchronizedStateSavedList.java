@@ -44,6 +44,14 @@ public class SynchronizedStateSavedList<E, State extends Serializable> implement
 		list = Collections.synchronizedList(new NoDuplicatesArrayList<E>(collection));
 	}
 
+	/**
+	 * Uses given list as backing list directly, it must be thread-safe
+	 * itself and reject duplicates, e.g. {@link IndexedStatusList}.
+	 */
+	public SynchronizedStateSavedList(final List<E> list, final boolean is_synchronized) {
+		this.list = is_synchronized ? list : Collections.synchronizedList(list);
+	}
+
 	@Override
 	public boolean add(final E e) {
 		return list.add(e);
@@ -24,7 +24,18 @@ import static android.text.TextUtils.isEmpty;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.mariotaku.twidere.Constants;
 import org.xbill.DNS.AAAARecord;
@@ -44,14 +55,28 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+/**
+ * Resolves hosts with custom host mapping, then TCP DNS query if enabled.
+ * <p>
+ * Resolved addresses are kept in a bounded LRU cache until their DNS TTL
+ * expires, and are persisted so they survive process restarts. All
+ * addresses of a host are probed concurrently and the first reachable one
+ * is used.
+ */
 public class TwidereHostAddressResolver implements Constants, HostAddressResolver {
 
 	private static final String RESOLVER_LOGTAG = "TwidereHostAddressResolver";
 
 	private static final String DEFAULT_DNS_SERVER_ADDRESS = "8.8.8.8";
 
-	private final SharedPreferences mHostMapping, mPreferences;
-	private final HostCache mHostCache = new HostCache(512);
+	private static final int HOST_CACHE_SIZE = 128;
+	private static final int PROBE_TIMEOUT = 300;
+	private static final long MIN_TTL = 60 * 1000, MAX_TTL = 24 * 60 * 60 * 1000;
+
+	private static final ExecutorService sProbeExecutor = Executors.newCachedThreadPool();
+
+	private final SharedPreferences mHostMapping, mPreferences, mHostCachePreferences;
+	private final HostCache mHostCache = new HostCache(HOST_CACHE_SIZE);
 	private final boolean mLocalMappingOnly;
 	private final String mDNSAddress;
 
@@ -64,26 +89,21 @@ public class TwidereHostAddressResolver implements Constants, HostAddressResolve
 	public TwidereHostAddressResolver(final Context context, final boolean local_only) {
 		mHostMapping = context.getSharedPreferences(HOST_MAPPING_PREFERENCES_NAME, Context.MODE_PRIVATE);
 		mPreferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+		mHostCachePreferences = context.getSharedPreferences(DNS_CACHE_PREFERENCES_NAME, Context.MODE_PRIVATE);
 		final String address = mPreferences.getString(PREFERENCE_KEY_DNS_SERVER, DEFAULT_DNS_SERVER_ADDRESS);
 		mDNSAddress = isValidIpAddress(address) ? address : DEFAULT_DNS_SERVER_ADDRESS;
 		mLocalMappingOnly = local_only;
+		loadHostCache();
 	}
 
 	@Override
 	public String resolve(final String host) throws IOException {
 		if (host == null) return null;
-		// First, I'll try to load address cached.
-		if (mHostCache.containsKey(host)) {
-			if (DEBUG) {
-				Log.d(RESOLVER_LOGTAG, "Got cached address " + mHostCache.get(host) + " for host " + host);
-			}
-			return mHostCache.get(host);
-		}
-		// Then I'll try to load from custom host mapping.
+		// First, I'll try to load from custom host mapping, it can be
+		// changed any time so it's never cached.
 		// Stupid way to find top domain, but really fast.
 		if (mHostMapping.contains(host)) {
 			final String host_addr = mHostMapping.getString(host, null);
-			mHostCache.put(host, host_addr);
 			if (DEBUG) {
 				Log.d(RESOLVER_LOGTAG, "Got mapped address " + host_addr + " for host " + host);
 			}
@@ -96,90 +116,227 @@ public class TwidereHostAddressResolver implements Constants, HostAddressResolve
 					+ host_segments[host_segments_length - 1];
 			if (mHostMapping.contains(top_domain)) {
 				final String host_addr = mHostMapping.getString(top_domain, null);
-				mHostCache.put(top_domain, host_addr);
 				if (DEBUG) {
 					Log.d(RESOLVER_LOGTAG, "Got mapped address (top domain) " + host_addr + " for host " + host);
 				}
 				return host_addr;
 			}
 		}
-		if (!mLocalMappingOnly) {
-			init();
-		}
-		// Use TCP DNS Query if enabled.
-		if (mDNS != null && mPreferences.getBoolean(PREFERENCE_KEY_TCP_DNS_QUERY, false)) {
-			final Name name = new Name(host);
-			final Record query = Record.newRecord(name, Type.A, DClass.IN);
-			if (query == null) return host;
-			final Message response = mDNS.send(Message.newQuery(query));
-			if (response == null) return host;
-			final Record[] records = response.getSectionArray(Section.ANSWER);
-			if (records == null || records.length < 1) throw new IOException("Could not find " + host);
-			String host_addr = null;
-			// Test each IP address resolved.
-			for (final Record record : records) {
-				if (record instanceof ARecord) {
-					final InetAddress ipv4_addr = ((ARecord) record).getAddress();
-					if (ipv4_addr.isReachable(300)) {
-						host_addr = ipv4_addr.getHostAddress();
-					}
-				} else if (record instanceof AAAARecord) {
-					final InetAddress ipv6_addr = ((AAAARecord) record).getAddress();
-					if (ipv6_addr.isReachable(300)) {
-						host_addr = ipv6_addr.getHostAddress();
-					}
-				}
-				if (mHostCache.put(host, host_addr) != null) {
-					if (DEBUG) {
-						Log.d(RESOLVER_LOGTAG, "Resolved address " + host_addr + " for host " + host);
-					}
-					return host_addr;
-				}
+		if (mLocalMappingOnly || !mPreferences.getBoolean(PREFERENCE_KEY_TCP_DNS_QUERY, false)) {
+			if (DEBUG) {
+				Log.w(RESOLVER_LOGTAG, "Resolve address " + host + " failed, using original host");
+			}
+			return host;
+		}
+		// Then I'll try to load address cached.
+		final String cached_addr = getHostCache(host);
+		if (cached_addr != null) {
+			if (DEBUG) {
+				Log.d(RESOLVER_LOGTAG, "Got cached address " + cached_addr + " for host " + host);
 			}
-			// No address is reachable, but I believe the IP is correct.
-			final Record record = records[0];
+			return cached_addr;
+		}
+		// Use TCP DNS Query.
+		init();
+		final Name name = new Name(host);
+		final Record query = Record.newRecord(name, Type.A, DClass.IN);
+		if (query == null) return host;
+		final Message response = mDNS.send(Message.newQuery(query));
+		if (response == null) return host;
+		final Record[] records = response.getSectionArray(Section.ANSWER);
+		if (records == null || records.length < 1) throw new IOException("Could not find " + host);
+		final List<InetAddress> addresses = new ArrayList<InetAddress>();
+		long ttl = MAX_TTL;
+		CNAMERecord cname = null;
+		for (final Record record : records) {
 			if (record instanceof ARecord) {
-				final InetAddress ipv4_addr = ((ARecord) record).getAddress();
-				host_addr = ipv4_addr.getHostAddress();
+				addresses.add(((ARecord) record).getAddress());
 			} else if (record instanceof AAAARecord) {
-				final InetAddress ipv6_addr = ((AAAARecord) record).getAddress();
-				host_addr = ipv6_addr.getHostAddress();
-			} else if (record instanceof CNAMERecord) return resolve(((CNAMERecord) record).getTarget().toString());
-			mHostCache.put(host, host_addr);
-			if (DEBUG) {
-				Log.d(RESOLVER_LOGTAG, "Resolved address " + host_addr + " for host " + host);
+				addresses.add(((AAAARecord) record).getAddress());
+			} else if (record instanceof CNAMERecord) {
+				if (cname == null) {
+					cname = (CNAMERecord) record;
+				}
+				continue;
+			} else {
+				continue;
 			}
-			return host_addr;
+			ttl = Math.min(ttl, record.getTTL() * 1000);
+		}
+		if (addresses.isEmpty()) {
+			if (cname != null) return resolve(cname.getTarget().toString());
+			return host;
 		}
+		// If no address is reachable, I still believe the first IP is
+		// correct.
+		final InetAddress reachable = findReachableAddress(addresses);
+		final String host_addr = (reachable != null ? reachable : addresses.get(0)).getHostAddress();
+		putHostCache(host, host_addr, System.currentTimeMillis() + Math.max(MIN_TTL, ttl));
 		if (DEBUG) {
-			Log.w(RESOLVER_LOGTAG, "Resolve address " + host + " failed, using original host");
+			Log.d(RESOLVER_LOGTAG, "Resolved address " + host_addr + " for host " + host);
 		}
-		return host;
+		return host_addr;
 	}
 
-	void init() throws UnknownHostException {
-		mDNS = !mLocalMappingOnly && mDNS == null ? new SimpleResolver(mDNSAddress) : null;
-		if (mDNS != null) {
-			mDNS.setTCP(true);
+	synchronized void init() throws UnknownHostException {
+		if (mLocalMappingOnly || mDNS != null) return;
+		mDNS = new SimpleResolver(mDNSAddress);
+		mDNS.setTCP(true);
+	}
+
+	private String getHostCache(final String host) {
+		final String host_addr = mHostCache.getAddress(host);
+		// Persisted hosts are always in memory unless they are expired.
+		if (host_addr == null && mHostCachePreferences.contains(host)) {
+			SharedPreferencesEditorAccessor.apply(mHostCachePreferences.edit().remove(host));
+		}
+		return host_addr;
+	}
+
+	private void loadHostCache() {
+		final long now = System.currentTimeMillis();
+		final SharedPreferences.Editor editor = mHostCachePreferences.edit();
+		boolean changed = false;
+		for (final Map.Entry<String, ?> entry : mHostCachePreferences.getAll().entrySet()) {
+			final String host = entry.getKey();
+			final Object value = entry.getValue();
+			final int idx = value instanceof String ? ((String) value).indexOf(',') : -1;
+			long expires = -1;
+			if (idx > 0) {
+				try {
+					expires = Long.parseLong(((String) value).substring(idx + 1));
+				} catch (final NumberFormatException e) {
+					// Ignore.
+				}
+			}
+			if (expires > now) {
+				mHostCache.putAddress(host, ((String) value).substring(0, idx), expires);
+			} else {
+				editor.remove(host);
+				changed = true;
+			}
+		}
+		if (changed) {
+			SharedPreferencesEditorAccessor.apply(editor);
 		}
 	}
 
+	private void putHostCache(final String host, final String host_addr, final long expires) {
+		final List<String> evicted = mHostCache.putAddress(host, host_addr, expires);
+		final SharedPreferences.Editor editor = mHostCachePreferences.edit();
+		for (final String evicted_host : evicted) {
+			editor.remove(evicted_host);
+		}
+		editor.putString(host, host_addr + "," + expires);
+		SharedPreferencesEditorAccessor.apply(editor);
+	}
+
+	/**
+	 * Probes all addresses at the same time, returns the first one answered,
+	 * or null if none is reachable in time.
+	 */
+	static InetAddress findReachableAddress(final List<InetAddress> addresses) {
+		final int size = addresses.size();
+		if (size == 1) return isReachable(addresses.get(0)) ? addresses.get(0) : null;
+		final CompletionService<InetAddress> service = new ExecutorCompletionService<InetAddress>(sProbeExecutor);
+		final List<Future<InetAddress>> futures = new ArrayList<Future<InetAddress>>(size);
+		for (final InetAddress address : addresses) {
+			futures.add(service.submit(new Callable<InetAddress>() {
+				@Override
+				public InetAddress call() {
+					return isReachable(address) ? address : null;
+				}
+			}));
+		}
+		try {
+			final long deadline = System.currentTimeMillis() + PROBE_TIMEOUT * 2;
+			for (int i = 0; i < size; i++) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				final Future<InetAddress> future = service.poll(remaining, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					break;
+				}
+				final InetAddress result = future.get();
+				if (result != null) return result;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			// Ignore.
+		} finally {
+			for (final Future<InetAddress> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return null;
+	}
+
 	static boolean isValidIpAddress(final String address) {
 		return !isEmpty(address);
 	}
 
-	private static class HostCache extends LinkedHashMap<String, String> {
+	private static boolean isReachable(final InetAddress address) {
+		try {
+			return address.isReachable(PROBE_TIMEOUT);
+		} catch (final IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * LRU cache of resolved addresses with their expire times.
+	 */
+	private static class HostCache extends LinkedHashMap<String, HostCache.Entry> {
 
 		private static final long serialVersionUID = -9216545511009449147L;
 
-		HostCache(final int initialCapacity) {
-			super(initialCapacity);
+		private final int mMaxSize;
+
+		HostCache(final int max_size) {
+			super(max_size, 0.75f, true);
+			mMaxSize = max_size;
+		}
+
+		/**
+		 * Returns address if it's cached and not expired.
+		 */
+		synchronized String getAddress(final String host) {
+			final Entry entry = get(host);
+			if (entry == null) return null;
+			if (entry.expires <= System.currentTimeMillis()) {
+				remove(host);
+				return null;
+			}
+			return entry.address;
+		}
+
+		/**
+		 * @return Hosts evicted to keep cache in size.
+		 */
+		synchronized List<String> putAddress(final String host, final String address, final long expires) {
+			final List<String> evicted = new ArrayList<String>();
+			if (address == null) return evicted;
+			put(host, new Entry(address, expires));
+			while (size() > mMaxSize) {
+				final String eldest = keySet().iterator().next();
+				remove(eldest);
+				evicted.add(eldest);
+			}
+			return evicted;
 		}
 
-		@Override
-		public String put(final String key, final String value) {
-			if (value == null) return value;
-			return super.put(key, value);
+		static final class Entry {
+
+			final String address;
+			final long expires;
+
+			Entry(final String address, final long expires) {
+				this.address = address;
+				this.expires = expires;
+			}
 		}
 	}
 }
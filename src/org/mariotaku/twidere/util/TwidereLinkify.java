@@ -19,6 +19,15 @@
 
 package org.mariotaku.twidere.util;
 
+import static com.twitter.Regex.VALID_CASHTAG;
+import static com.twitter.Regex.VALID_CASHTAG_GROUP_CASHTAG_FULL;
+import static com.twitter.Regex.VALID_CASHTAG_GROUP_TAG;
+import static com.twitter.Regex.VALID_HASHTAG;
+import static com.twitter.Regex.VALID_HASHTAG_GROUP_HASHTAG_FULL;
+import static com.twitter.Regex.VALID_MENTION_OR_LIST;
+import static com.twitter.Regex.VALID_MENTION_OR_LIST_GROUP_AT;
+import static com.twitter.Regex.VALID_MENTION_OR_LIST_GROUP_LIST;
+import static com.twitter.Regex.VALID_MENTION_OR_LIST_GROUP_USERNAME;
 import static org.mariotaku.twidere.util.Utils.getAllAvailableImage;
 import static org.mariotaku.twidere.util.Utils.matcherEnd;
 import static org.mariotaku.twidere.util.Utils.matcherGroup;
@@ -38,8 +47,6 @@ import android.text.style.URLSpan;
 import android.view.View;
 import android.widget.TextView;
 
-import com.twitter.Regex;
-
 /**
  * Linkify take a piece of text and a regular expression and turns all of the
  * regex matches in the text into clickable links. This is particularly useful
@@ -65,11 +72,6 @@ public class TwidereLinkify {
 	public static final int LINK_TYPE_LIST = 6;
 	public static final int LINK_TYPE_CASHTAG = 7;
 
-	public static final int[] ALL_LINK_TYPES = new int[] { LINK_TYPE_LINK, LINK_TYPE_MENTION_LIST, LINK_TYPE_HASHTAG,
-			LINK_TYPE_LINK_WITH_IMAGE_EXTENSION, LINK_TYPE_ALL_AVAILABLE_IMAGE, LINK_TYPE_CASHTAG
-
-	};
-
 	public static final String SINA_WEIBO_IMAGES_AVAILABLE_SIZES = "(woriginal|large|thumbnail|bmiddle|mw[\\d]+)";
 
 	public static final String AVAILABLE_URL_SCHEME_PREFIX = "(https?:\\/\\/)?";
@@ -190,96 +192,39 @@ public class TwidereLinkify {
 
 	private OnLinkClickListener mOnLinkClickListener;
 
+	/**
+	 * Creates a linkify not bound to any view, use
+	 * {@link #getLinkifiedText(CharSequence)} to build texts with links.
+	 */
+	public TwidereLinkify(final OnLinkClickListener listener) {
+		view = null;
+		mOnLinkClickListener = listener;
+	}
+
 	public TwidereLinkify(final TextView view) {
 		this.view = view;
 		view.setMovementMethod(LinkMovementMethod.getInstance());
 	}
 
+	/**
+	 * Applies all types of links to text of the view, text is copied and set
+	 * only once.
+	 */
 	public final void addAllLinks() {
-		for (final int type : ALL_LINK_TYPES) {
-			addLinks(type);
-		}
+		if (view == null) return;
+		view.setText(getLinkifiedText(view.getText()));
+		addLinkMovementMethod(view);
 	}
 
 	/**
-	 * Applies a regex to the text of a TextView turning the matches into links.
-	 * If links are found then UrlSpans are applied to the link text match
-	 * areas, and the movement method for the text is changed to
-	 * LinkMovementMethod.
-	 * 
-	 * @param description TextView whose text is to be marked-up with links
-	 * @param pattern Regex pattern to be used for finding links
-	 * @param scheme Url scheme string (eg <code>http://</code> to be prepended
-	 *            to the url of links that do not have a scheme specified in the
-	 *            link text
+	 * Applies all types of links to a copy of text, the result can be cached
+	 * and set to views directly.
 	 */
-	public final void addLinks(final int type) {
-		final SpannableString string = SpannableString.valueOf(view.getText());
-		switch (type) {
-			case LINK_TYPE_MENTION_LIST: {
-				addMentionOrListLinks(string);
-				break;
-			}
-			case LINK_TYPE_HASHTAG: {
-				addHashtagLinks(string);
-				break;
-			}
-			case LINK_TYPE_LINK_WITH_IMAGE_EXTENSION: {
-				final URLSpan[] spans = string.getSpans(0, string.length(), URLSpan.class);
-				for (final URLSpan span : spans) {
-					final int start = string.getSpanStart(span);
-					final int end = string.getSpanEnd(span);
-					final String url = span.getURL();
-					if (PATTERN_IMAGES.matcher(url).matches()) {
-						string.removeSpan(span);
-						applyLink(url, start, end, string, LINK_TYPE_LINK_WITH_IMAGE_EXTENSION);
-					}
-				}
-				break;
-			}
-			case LINK_TYPE_LINK: {
-				final URLSpan[] spans = string.getSpans(0, string.length(), URLSpan.class);
-				for (final URLSpan span : spans) {
-					final int start = string.getSpanStart(span);
-					final int end = string.getSpanEnd(span);
-					if (start < 0 || end > string.length() || start > end) {
-						continue;
-					}
-					string.removeSpan(span);
-					applyLink(span.getURL(), start, end, string, LINK_TYPE_LINK);
-				}
-				break;
-			}
-			case LINK_TYPE_ALL_AVAILABLE_IMAGE: {
-				final URLSpan[] spans = string.getSpans(0, string.length(), URLSpan.class);
-				for (final URLSpan span : spans) {
-					final Matcher matcher = PATTERN_ALL_AVAILABLE_IMAGES.matcher(span.getURL());
-					if (matcher.matches()) {
-						final ImageSpec spec = getAllAvailableImage(matcher.group());
-						final int start = string.getSpanStart(span);
-						final int end = string.getSpanEnd(span);
-						if (spec == null || start < 0 || end > string.length() || start > end) {
-							continue;
-						}
-						final String url = spec.full_image_link;
-						string.removeSpan(span);
-						applyLink(url, start, end, string, LINK_TYPE_LINK_WITH_IMAGE_EXTENSION);
-					}
-				}
-				break;
-			}
-			case LINK_TYPE_CASHTAG: {
-				addCashtagLinks(string);
-				break;
-			}
-			default: {
-				return;
-			}
-
-		}
-
-		view.setText(string);
-		addLinkMovementMethod(view);
+	public final Spannable getLinkifiedText(final CharSequence text) {
+		final SpannableString string = new SpannableString(text);
+		addURLLinks(string);
+		addEntityLinks(string);
+		return string;
 	}
 
 	public OnLinkClickListener getmOnLinkClickListener() {
@@ -290,57 +235,64 @@ public class TwidereLinkify {
 		mOnLinkClickListener = listener;
 	}
 
-	private final boolean addCashtagLinks(final Spannable spannable) {
-		boolean hasMatches = false;
-		final Matcher matcher = Regex.VALID_CASHTAG.matcher(spannable);
-
-		while (matcher.find()) {
-			final int start = matcherStart(matcher, Regex.VALID_CASHTAG_GROUP_CASHTAG_FULL);
-			final int end = matcherEnd(matcher, Regex.VALID_CASHTAG_GROUP_CASHTAG_FULL);
-			final String url = matcherGroup(matcher, Regex.VALID_CASHTAG_GROUP_TAG);
-
+	/**
+	 * Adds mentions, lists, hashtags and cashtags to the same spannable.
+	 * Patterns are matched separately, as matches of different types may
+	 * overlap (e.g. "#RT@user").
+	 */
+	private final void addEntityLinks(final Spannable spannable) {
+		final Matcher mention_matcher = VALID_MENTION_OR_LIST.matcher(spannable);
+		while (mention_matcher.find()) {
+			final int start = matcherStart(mention_matcher, VALID_MENTION_OR_LIST_GROUP_AT);
+			final int username_end = matcherEnd(mention_matcher, VALID_MENTION_OR_LIST_GROUP_USERNAME);
+			final int list_start = matcherStart(mention_matcher, VALID_MENTION_OR_LIST_GROUP_LIST);
+			final int list_end = matcherEnd(mention_matcher, VALID_MENTION_OR_LIST_GROUP_LIST);
+			final String mention = matcherGroup(mention_matcher, VALID_MENTION_OR_LIST_GROUP_USERNAME);
+			final String list = matcherGroup(mention_matcher, VALID_MENTION_OR_LIST_GROUP_LIST);
+			applyLink(mention, start, username_end, spannable, LINK_TYPE_MENTION_LIST);
+			if (list_start >= 0 && list_end >= 0) {
+				applyLink(mention + "/" + list, list_start, list_end, spannable, LINK_TYPE_LIST);
+			}
+		}
+		final Matcher hashtag_matcher = VALID_HASHTAG.matcher(spannable);
+		while (hashtag_matcher.find()) {
+			final int start = matcherStart(hashtag_matcher, VALID_HASHTAG_GROUP_HASHTAG_FULL);
+			final int end = matcherEnd(hashtag_matcher, VALID_HASHTAG_GROUP_HASHTAG_FULL);
+			final String url = matcherGroup(hashtag_matcher, VALID_HASHTAG_GROUP_HASHTAG_FULL);
 			applyLink(url, start, end, spannable, LINK_TYPE_HASHTAG);
-			hasMatches = true;
 		}
-
-		return hasMatches;
-	}
-
-	private final boolean addHashtagLinks(final Spannable spannable) {
-		boolean hasMatches = false;
-		final Matcher matcher = Regex.VALID_HASHTAG.matcher(spannable);
-
-		while (matcher.find()) {
-			final int start = matcherStart(matcher, Regex.VALID_HASHTAG_GROUP_HASHTAG_FULL);
-			final int end = matcherEnd(matcher, Regex.VALID_HASHTAG_GROUP_HASHTAG_FULL);
-			final String url = matcherGroup(matcher, Regex.VALID_HASHTAG_GROUP_HASHTAG_FULL);
-
+		final Matcher cashtag_matcher = VALID_CASHTAG.matcher(spannable);
+		while (cashtag_matcher.find()) {
+			final int start = matcherStart(cashtag_matcher, VALID_CASHTAG_GROUP_CASHTAG_FULL);
+			final int end = matcherEnd(cashtag_matcher, VALID_CASHTAG_GROUP_CASHTAG_FULL);
+			final String url = matcherGroup(cashtag_matcher, VALID_CASHTAG_GROUP_TAG);
 			applyLink(url, start, end, spannable, LINK_TYPE_HASHTAG);
-			hasMatches = true;
 		}
-
-		return hasMatches;
 	}
 
-	private final boolean addMentionOrListLinks(final Spannable spannable) {
-		boolean hasMatches = false;
-		final Matcher matcher = Regex.VALID_MENTION_OR_LIST.matcher(spannable);
-
-		while (matcher.find()) {
-			final int start = matcherStart(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_AT);
-			final int username_end = matcherEnd(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_USERNAME);
-			final int list_start = matcherStart(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_LIST);
-			final int list_end = matcherEnd(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_LIST);
-			final String mention = matcherGroup(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_USERNAME);
-			final String list = matcherGroup(matcher, Regex.VALID_MENTION_OR_LIST_GROUP_LIST);
-			applyLink(mention, start, username_end, spannable, LINK_TYPE_MENTION_LIST);
-			if (list_start >= 0 && list_end >= 0) {
-				applyLink(mention + "/" + list, list_start, list_end, spannable, LINK_TYPE_LIST);
+	/**
+	 * Replaces URLSpans from html with links, links to images are recognized
+	 * in the same pass.
+	 */
+	private final void addURLLinks(final Spannable string) {
+		final URLSpan[] spans = string.getSpans(0, string.length(), URLSpan.class);
+		for (final URLSpan span : spans) {
+			final int start = string.getSpanStart(span);
+			final int end = string.getSpanEnd(span);
+			if (start < 0 || end > string.length() || start > end) {
+				continue;
+			}
+			final String url = span.getURL();
+			string.removeSpan(span);
+			final ImageSpec spec = getAllAvailableImage(url);
+			if (spec != null) {
+				applyLink(spec.full_image_link, start, end, string, LINK_TYPE_LINK_WITH_IMAGE_EXTENSION);
+			} else if (url != null && PATTERN_IMAGES.matcher(url).matches()) {
+				applyLink(url, start, end, string, LINK_TYPE_LINK_WITH_IMAGE_EXTENSION);
+			} else {
+				applyLink(url, start, end, string, LINK_TYPE_LINK);
 			}
-			hasMatches = true;
 		}
-
-		return hasMatches;
 	}
 
 	private final void applyLink(final String url, final int start, final int end, final Spannable text, final int type) {
@@ -24,28 +24,9 @@ import static android.text.TextUtils.isEmpty;
 import static org.mariotaku.twidere.provider.TweetStore.CACHE_URIS;
 import static org.mariotaku.twidere.provider.TweetStore.DIRECT_MESSAGES_URIS;
 import static org.mariotaku.twidere.provider.TweetStore.STATUSES_URIS;
-import static org.mariotaku.twidere.util.TwidereLinkify.IMGLY_GROUP_ID;
-import static org.mariotaku.twidere.util.TwidereLinkify.IMGUR_GROUP_ID;
-import static org.mariotaku.twidere.util.TwidereLinkify.INSTAGRAM_GROUP_ID;
-import static org.mariotaku.twidere.util.TwidereLinkify.MOBYPICTURE_GROUP_ID;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_IMGLY;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_IMGUR;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_INSTAGRAM;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_LOCKERZ_AND_PLIXI;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_MOBYPICTURE;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_PHOTOZOU;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_SINA_WEIBO_IMAGES;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITGOO;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITPIC;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITTER_IMAGES;
 import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_TWITTER_PROFILE_IMAGES;
-import static org.mariotaku.twidere.util.TwidereLinkify.PATTERN_YFROG;
-import static org.mariotaku.twidere.util.TwidereLinkify.PHOTOZOU_GROUP_ID;
 import static org.mariotaku.twidere.util.TwidereLinkify.SINA_WEIBO_IMAGES_AVAILABLE_SIZES;
-import static org.mariotaku.twidere.util.TwidereLinkify.TWITGOO_GROUP_ID;
-import static org.mariotaku.twidere.util.TwidereLinkify.TWITPIC_GROUP_ID;
 import static org.mariotaku.twidere.util.TwidereLinkify.TWITTER_PROFILE_IMAGES_AVAILABLE_SIZES;
-import static org.mariotaku.twidere.util.TwidereLinkify.YFROG_GROUP_ID;
 
 import java.io.File;
 import java.io.IOException;
@@ -63,6 +44,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -113,15 +95,14 @@ import org.mariotaku.twidere.provider.TweetStore.CachedStatuses;
 import org.mariotaku.twidere.provider.TweetStore.CachedTrends;
 import org.mariotaku.twidere.provider.TweetStore.CachedUsers;
 import org.mariotaku.twidere.provider.TweetStore.DirectMessages;
-import org.mariotaku.twidere.provider.TweetStore.Filters;
 import org.mariotaku.twidere.provider.TweetStore.Statuses;
 import org.mariotaku.twidere.provider.TweetStore.Tabs;
-import org.mariotaku.twidere.util.HtmlLinkExtractor.HtmlLink;
 import org.mariotaku.twidere.util.httpclient.HttpClientImpl;
 
 import twitter4j.DirectMessage;
 import twitter4j.EntitySupport;
 import twitter4j.GeoLocation;
+import twitter4j.HashtagEntity;
 import twitter4j.MediaEntity;
 import twitter4j.RateLimitStatus;
 import twitter4j.ResponseList;
@@ -134,6 +115,7 @@ import twitter4j.TwitterFactory;
 import twitter4j.URLEntity;
 import twitter4j.User;
 import twitter4j.UserList;
+import twitter4j.UserMentionEntity;
 import twitter4j.auth.AccessToken;
 import twitter4j.auth.BasicAuthorization;
 import twitter4j.auth.TwipOModeAuthorization;
@@ -155,7 +137,6 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.BitmapFactory;
@@ -191,6 +172,8 @@ import android.view.MenuItem;
 import android.view.SubMenu;
 import android.widget.Toast;
 
+import com.twitter.Extractor;
+
 public final class Utils implements Constants {
 
 	private static final UriMatcher CONTENT_PROVIDER_URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
@@ -305,6 +288,9 @@ public final class Utils implements Constants {
 	private static Map<Long, String> sAccountScreenNames = new LinkedHashMap<Long, String>();
 	private static Map<Long, String> sAccountNames = new LinkedHashMap<Long, String>();
 
+	private static final Map<String, Twitter> sTwitterInstances = new HashMap<String, Twitter>();
+	private static int sTwitterInstancesGeneration;
+
 	private Utils() {
 		throw new AssertionError("You are trying to create an instance for this utility class!");
 	}
@@ -384,42 +370,20 @@ public final class Utils implements Constants {
 		return builder.build();
 	}
 
+	/**
+	 * Statuses are marked by {@link StatusFilter} when inserted or filters
+	 * changed, gaps are never filtered.
+	 */
 	public static String buildStatusFilterWhereClause(final String table, final String selection) {
 		if (table == null) return null;
 		final StringBuilder builder = new StringBuilder();
 		if (selection != null) {
-			builder.append(selection);
+			builder.append("(" + selection + ")");
 			builder.append(" AND ");
 		}
-		builder.append(Statuses._ID + " NOT IN ( ");
-		builder.append("SELECT DISTINCT " + table + "." + Statuses._ID + " FROM " + table);
-		builder.append(" WHERE " + table + "." + Statuses.SCREEN_NAME + " IN ( SELECT " + TABLE_FILTERED_USERS + "."
-				+ Filters.Users.TEXT + " FROM " + TABLE_FILTERED_USERS + " )");
-		builder.append(" AND " + table + "." + Statuses.IS_GAP + " IS NULL");
-		builder.append(" OR " + table + "." + Statuses.IS_GAP + " == 0");
-		builder.append(" UNION ");
-		builder.append("SELECT DISTINCT " + table + "." + Statuses._ID + " FROM " + table + ", "
-				+ TABLE_FILTERED_SOURCES);
-		builder.append(" WHERE " + table + "." + Statuses.SOURCE + " LIKE '%>'||" + TABLE_FILTERED_SOURCES + "."
-				+ Filters.Sources.TEXT + "||'</a>%'");
-		builder.append(" AND " + table + "." + Statuses.IS_GAP + " IS NULL");
-		builder.append(" OR " + table + "." + Statuses.IS_GAP + " == 0");
-		builder.append(" UNION ");
-		builder.append("SELECT DISTINCT " + table + "." + Statuses._ID + " FROM " + table + ", "
-				+ TABLE_FILTERED_KEYWORDS);
-		builder.append(" WHERE " + table + "." + Statuses.TEXT_PLAIN + " LIKE '%'||" + TABLE_FILTERED_KEYWORDS + "."
-				+ Filters.Keywords.TEXT + "||'%'");
-		builder.append(" AND " + table + "." + Statuses.IS_GAP + " IS NULL");
-		builder.append(" OR " + table + "." + Statuses.IS_GAP + " == 0");
-		builder.append(" UNION ");
-		builder.append("SELECT DISTINCT " + table + "." + Statuses._ID + " FROM " + table + ", " + TABLE_FILTERED_LINKS);
-		builder.append(" WHERE " + table + "." + Statuses.TEXT + " LIKE '%<a href=\"%'||" + TABLE_FILTERED_LINKS + "."
-				+ Filters.Links.TEXT + "||'%\">%'");
-		builder.append(" OR " + table + "." + Statuses.TEXT + " LIKE '%>%'||" + TABLE_FILTERED_LINKS + "."
-				+ Filters.Links.TEXT + "||'%</a>%'");
-		builder.append(" AND " + table + "." + Statuses.IS_GAP + " IS NULL");
-		builder.append(" OR " + table + "." + Statuses.IS_GAP + " == 0");
-		builder.append(" )");
+		builder.append("(" + table + "." + Statuses.IS_FILTERED + " IS NULL");
+		builder.append(" OR " + table + "." + Statuses.IS_FILTERED + " = 0");
+		builder.append(" OR " + table + "." + Statuses.IS_GAP + " = 1)");
 		return builder.toString();
 	}
 
@@ -507,6 +471,18 @@ public final class Utils implements Constants {
 		sAccountScreenNames.clear();
 	}
 
+	/**
+	 * Drops cached instances returned by
+	 * {@link #getTwitterInstance(Context, long, boolean, boolean)}, should be
+	 * called when accounts or connectivity settings changed.
+	 */
+	public static void clearTwitterInstances() {
+		synchronized (sTwitterInstances) {
+			sTwitterInstances.clear();
+			sTwitterInstancesGeneration++;
+		}
+	}
+
 	public static void clearUserColor(final Context context, final long user_id) {
 		if (context == null) return;
 		final SharedPreferences prefs = context.getSharedPreferences(USER_COLOR_PREFERENCES_NAME, Context.MODE_PRIVATE);
@@ -916,31 +892,7 @@ public final class Utils implements Constants {
 	}
 
 	public static ImageSpec getAllAvailableImage(final String link) {
-		if (link == null) return null;
-		Matcher m;
-		m = PATTERN_TWITTER_IMAGES.matcher(link);
-		if (m.matches()) return getTwitterImage(link, true);
-		m = PATTERN_TWITPIC.matcher(link);
-		if (m.matches()) return getTwitpicImage(matcherGroup(m, TWITPIC_GROUP_ID), true);
-		m = PATTERN_INSTAGRAM.matcher(link);
-		if (m.matches()) return getInstagramImage(matcherGroup(m, INSTAGRAM_GROUP_ID), true);
-		m = PATTERN_IMGUR.matcher(link);
-		if (m.matches()) return getImgurImage(matcherGroup(m, IMGUR_GROUP_ID), true);
-		m = PATTERN_IMGLY.matcher(link);
-		if (m.matches()) return getImglyImage(matcherGroup(m, IMGLY_GROUP_ID), true);
-		m = PATTERN_YFROG.matcher(link);
-		if (m.matches()) return getYfrogImage(matcherGroup(m, YFROG_GROUP_ID), true);
-		m = PATTERN_LOCKERZ_AND_PLIXI.matcher(link);
-		if (m.matches()) return getLockerzAndPlixiImage(link, true);
-		m = PATTERN_SINA_WEIBO_IMAGES.matcher(link);
-		if (m.matches()) return getSinaWeiboImage(link, true);
-		m = PATTERN_TWITGOO.matcher(link);
-		if (m.matches()) return getTwitgooImage(matcherGroup(m, TWITGOO_GROUP_ID), true);
-		m = PATTERN_MOBYPICTURE.matcher(link);
-		if (m.matches()) return getMobyPictureImage(matcherGroup(m, MOBYPICTURE_GROUP_ID), true);
-		m = PATTERN_PHOTOZOU.matcher(link);
-		if (m.matches()) return getPhotozouImage(matcherGroup(m, PHOTOZOU_GROUP_ID), true);
-		return null;
+		return ImageHostMatcher.getImageSpec(link, true);
 	}
 
 	public static int getAllStatusesCount(final Context context, final Uri uri) {
@@ -1097,6 +1049,21 @@ public final class Utils implements Constants {
 		return getTwitterInstance(context, getDefaultAccountId(context), include_entities, use_httpclient);
 	}
 
+	/**
+	 * Returns hashtags of status from its entities, or extracted from text if
+	 * entities are not available.
+	 */
+	public static List<String> getHashtags(final Status status) {
+		if (status == null) return Collections.emptyList();
+		final HashtagEntity[] entities = status.getHashtagEntities();
+		if (entities == null) return new Extractor().extractHashtags(status.getText());
+		final List<String> hashtags = new ArrayList<String>(entities.length);
+		for (final HashtagEntity entity : entities) {
+			hashtags.add(entity.getText());
+		}
+		return hashtags;
+	}
+
 	public static HttpClientWrapper getHttpClient(final int timeout_millis, final boolean ignore_ssl_error,
 			final Proxy proxy, final HostAddressResolver resolver, final String user_agent) {
 		final ConfigurationBuilder cb = new ConfigurationBuilder();
@@ -1161,10 +1128,10 @@ public final class Utils implements Constants {
 	public static List<ImageSpec> getImagesInStatus(final String status_string) {
 		if (status_string == null) return Collections.emptyList();
 		final List<ImageSpec> images = new ArrayList<ImageSpec>();
-		final HtmlLinkExtractor extractor = new HtmlLinkExtractor();
-		extractor.grabLinks(status_string);
-		for (final HtmlLink link : extractor.grabLinks(status_string)) {
-			final ImageSpec spec = getAllAvailableImage(link.getLink());
+		final HtmlLinkExtractor extractor = new HtmlLinkExtractor(status_string);
+		while (extractor.find()) {
+			final ImageSpec spec = ImageHostMatcher.getImageSpec(status_string, extractor.linkStart(),
+					extractor.linkEnd(), true);
 			if (spec != null) {
 				images.add(spec);
 			}
@@ -1230,6 +1197,19 @@ public final class Utils implements Constants {
 
 	}
 
+	/**
+	 * Same as {@link #getPreviewImage(String, int)}, but uses link stored in
+	 * {@link Statuses#MEDIA_LINK} instead of parsing html.
+	 */
+	public static PreviewImage getMediaLinkPreviewImage(final String media_link, final int display_option) {
+		if (media_link == null) return new PreviewImage(false, null, null);
+		if (display_option == INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_NONE) return new PreviewImage(true, null, null);
+		final boolean large_image_preview = display_option == INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE;
+		final ImageSpec spec = ImageHostMatcher.getImageSpec(media_link, large_image_preview);
+		if (spec == null) return new PreviewImage(false, null, null);
+		return new PreviewImage(spec, media_link);
+	}
+
 	public static ImageSpec getMobyPictureImage(final String id, final boolean large_image_preview) {
 		if (isEmpty(id)) return null;
 		final String full = "https://moby.to/" + id + ":full";
@@ -1372,46 +1352,11 @@ public final class Utils implements Constants {
 					|| html.contains("://plixi.com/p/") || html.contains("://lockerz.com/s/")
 					|| html.contains(".sinaimg.cn/") || html.contains("://photozou.jp/"), null, null);
 		final boolean large_image_preview = display_option == INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE;
-		final HtmlLinkExtractor extractor = new HtmlLinkExtractor();
-		for (final HtmlLink link : extractor.grabLinks(html)) {
-			final String image_url = link.getLink();
-			Matcher m;
-			m = PATTERN_TWITTER_IMAGES.matcher(image_url);
-			if (m.matches()) return new PreviewImage(getTwitterImage(image_url, large_image_preview), image_url);
-			m = PATTERN_TWITPIC.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getTwitpicImage(matcherGroup(m, TWITPIC_GROUP_ID), large_image_preview),
-						image_url);
-			m = PATTERN_INSTAGRAM.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getInstagramImage(matcherGroup(m, INSTAGRAM_GROUP_ID), large_image_preview),
-						image_url);
-			m = PATTERN_IMGUR.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getImgurImage(matcherGroup(m, IMGUR_GROUP_ID), large_image_preview), image_url);
-			m = PATTERN_IMGLY.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getImglyImage(matcherGroup(m, IMGLY_GROUP_ID), large_image_preview), image_url);
-			m = PATTERN_YFROG.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getYfrogImage(matcherGroup(m, YFROG_GROUP_ID), large_image_preview), image_url);
-			m = PATTERN_LOCKERZ_AND_PLIXI.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getLockerzAndPlixiImage(image_url, large_image_preview), image_url);
-			m = PATTERN_SINA_WEIBO_IMAGES.matcher(image_url);
-			if (m.matches()) return new PreviewImage(getSinaWeiboImage(image_url, large_image_preview), image_url);
-			m = PATTERN_TWITGOO.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getTwitgooImage(matcherGroup(m, TWITGOO_GROUP_ID), large_image_preview),
-						image_url);
-			m = PATTERN_MOBYPICTURE.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(
-						getMobyPictureImage(matcherGroup(m, MOBYPICTURE_GROUP_ID), large_image_preview), image_url);
-			m = PATTERN_PHOTOZOU.matcher(image_url);
-			if (m.matches())
-				return new PreviewImage(getPhotozouImage(matcherGroup(m, PHOTOZOU_GROUP_ID), large_image_preview),
-						image_url);
+		final HtmlLinkExtractor extractor = new HtmlLinkExtractor(html);
+		while (extractor.find()) {
+			final ImageSpec spec = ImageHostMatcher.getImageSpec(html, extractor.linkStart(), extractor.linkEnd(),
+					large_image_preview);
+			if (spec != null) return new PreviewImage(spec, extractor.getLink());
 		}
 		return new PreviewImage(false, null, null);
 	}
@@ -1592,6 +1537,8 @@ public final class Utils implements Constants {
 				return TABLE_DIRECT_MESSAGES_INBOX;
 			case TABLE_ID_DIRECT_MESSAGES_OUTBOX:
 				return TABLE_DIRECT_MESSAGES_OUTBOX;
+			case TABLE_ID_DIRECT_MESSAGES_CONVERSATIONS_ENTRY:
+				return TABLE_DIRECT_MESSAGES_CONVERSATIONS_ENTRY;
 			case TABLE_ID_TRENDS_LOCAL:
 				return TABLE_TRENDS_LOCAL;
 			case TABLE_ID_TABS:
@@ -1673,9 +1620,36 @@ public final class Utils implements Constants {
 		return getTwitterInstance(context, account_id, include_entities, true);
 	}
 
+	/**
+	 * Returns cached instance for the account if there's one, instances are
+	 * shared between threads and use a shared connection pool.
+	 */
 	public static Twitter getTwitterInstance(final Context context, final long account_id,
 			final boolean include_entities, final boolean use_httpclient) {
 		if (context == null) return null;
+		final String key = account_id + "_" + include_entities + "_" + use_httpclient;
+		final int generation;
+		synchronized (sTwitterInstances) {
+			final Twitter cached = sTwitterInstances.get(key);
+			if (cached != null) return cached;
+			generation = sTwitterInstancesGeneration;
+		}
+		final Twitter twitter = createTwitterInstance(context, account_id, include_entities, use_httpclient);
+		if (twitter == null) return null;
+		synchronized (sTwitterInstances) {
+			// Don't cache instance created with settings which have changed
+			// meanwhile.
+			if (generation == sTwitterInstancesGeneration) {
+				final Twitter cached = sTwitterInstances.get(key);
+				if (cached != null) return cached;
+				sTwitterInstances.put(key, twitter);
+			}
+		}
+		return twitter;
+	}
+
+	private static Twitter createTwitterInstance(final Context context, final long account_id,
+			final boolean include_entities, final boolean use_httpclient) {
 		final TwidereApplication app = TwidereApplication.getInstance(context);
 		final SharedPreferences preferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME,
 				Context.MODE_PRIVATE);
@@ -1821,34 +1795,12 @@ public final class Utils implements Constants {
 		return plugged || level / scale > 0.15f;
 	}
 
-	public static boolean isFiltered(final SQLiteDatabase database, final ParcelableStatus status) {
-		if (status == null) return false;
-		return isFiltered(database, status.text_plain, status.text_html, status.screen_name, status.source);
-	}
-
-	public static boolean isFiltered(final SQLiteDatabase database, final String text_plain, final String text_html,
-			final String screen_name, final String source) {
-		if (database == null) return false;
-		final StringBuilder builder = new StringBuilder();
-		final String[] selection_args = new String[] { text_plain, text_html, screen_name, source };
-		builder.append("SELECT NULL WHERE");
-		builder.append("(SELECT 1 IN (SELECT ? LIKE '%'||" + TABLE_FILTERED_KEYWORDS + "." + Filters.TEXT
-				+ "||'%' FROM " + TABLE_FILTERED_KEYWORDS + "))");
-		builder.append(" OR ");
-		builder.append("(SELECT 1 IN (SELECT ? LIKE '%<a href=\"%'||" + TABLE_FILTERED_LINKS + "." + Filters.TEXT
-				+ "||'%\">%' FROM " + TABLE_FILTERED_LINKS + "))");
-		builder.append(" OR ");
-		builder.append("(SELECT ? IN (SELECT " + Filters.TEXT + " FROM " + TABLE_FILTERED_USERS + "))");
-		builder.append(" OR ");
-		builder.append("(SELECT 1 IN (SELECT ? LIKE '%>'||" + TABLE_FILTERED_SOURCES + "." + Filters.TEXT
-				+ "||'</a>%' FROM " + TABLE_FILTERED_SOURCES + "))");
-		final Cursor cur = database.rawQuery(builder.toString(), selection_args);
-		if (cur == null) return false;
-		try {
-			return cur.getCount() > 0;
-		} finally {
-			cur.close();
-		}
+	/**
+	 * @param user_mentions Value of {@link Statuses#USER_MENTIONS}
+	 */
+	public static boolean isMentioned(final String user_mentions, final String screen_name) {
+		if (user_mentions == null || screen_name == null) return false;
+		return user_mentions.contains(" " + screen_name.toLowerCase(Locale.US) + " ");
 	}
 
 	public static boolean isMyAccount(final Context context, final long account_id) {
@@ -2062,8 +2014,14 @@ public final class Utils implements Constants {
 		if (status.getCreatedAt() != null) {
 			values.put(Statuses.STATUS_TIMESTAMP, status.getCreatedAt().getTime());
 		}
-		values.put(Statuses.TEXT, formatStatusText(status));
+		final String text_html = formatStatusText(status);
+		values.put(Statuses.TEXT, text_html);
 		values.put(Statuses.TEXT_PLAIN, status.getText());
+		values.put(Statuses.USER_MENTIONS, joinEntities(getUserMentions(status), true));
+		values.put(Statuses.HASHTAGS, joinEntities(getHashtags(status), false));
+		values.put(Statuses.URLS, joinEntities(getURLs(status), false));
+		final PreviewImage preview = getPreviewImage(text_html, INLINE_IMAGE_PREVIEW_DISPLAY_OPTION_CODE_LARGE);
+		values.put(Statuses.MEDIA_LINK, preview.orig_url);
 		values.put(Statuses.RETWEET_COUNT, status.getRetweetCount());
 		values.put(Statuses.IN_REPLY_TO_SCREEN_NAME, status.getInReplyToScreenName());
 		values.put(Statuses.IN_REPLY_TO_STATUS_ID, status.getInReplyToStatusId());
@@ -2127,32 +2085,6 @@ public final class Utils implements Constants {
 		return LINK_HANDLER_URI_MATCHER.match(uri);
 	}
 
-	public static void notifyForUpdatedUri(final Context context, final Uri uri) {
-		if (context == null) return;
-		switch (getTableId(uri)) {
-			case TABLE_ID_STATUSES: {
-				context.sendBroadcast(new Intent(BROADCAST_HOME_TIMELINE_DATABASE_UPDATED));
-				break;
-			}
-			case TABLE_ID_MENTIONS: {
-				context.sendBroadcast(new Intent(BROADCAST_MENTIONS_DATABASE_UPDATED));
-				break;
-			}
-			case TABLE_ID_DIRECT_MESSAGES_INBOX: {
-				context.sendBroadcast(new Intent(BROADCAST_RECEIVED_DIRECT_MESSAGES_DATABASE_UPDATED));
-				break;
-			}
-			case TABLE_ID_DIRECT_MESSAGES_OUTBOX: {
-				context.sendBroadcast(new Intent(BROADCAST_SENT_DIRECT_MESSAGES_DATABASE_UPDATED));
-				break;
-			}
-			default: {
-				return;
-			}
-		}
-		context.sendBroadcast(new Intent(BROADCAST_DATABASE_UPDATED));
-	}
-
 	public static boolean objectEquals(final Object object1, final Object object2) {
 		if (object1 == null || object2 == null) return object1 == object2;
 		return object1.equals(object2);
@@ -2217,6 +2149,18 @@ public final class Utils implements Constants {
 		}
 	}
 
+	/**
+	 * Opens image viewer, cached preview of the image will be shown while it's
+	 * being loaded.
+	 */
+	public static void openImage(final Context context, final String url, final String preview_url,
+			final boolean is_possibly_sensitive) {
+		if (context == null || url == null) return;
+		final MediaCache cache = TwidereApplication.getInstance(context).getMediaCache();
+		cache.putPreview(url, preview_url);
+		openImage(context, Uri.parse(url), is_possibly_sensitive);
+	}
+
 	public static void openIncomingFriendships(final Activity activity, final long account_id) {
 		if (activity == null) return;
 		if (activity instanceof DualPaneActivity && ((DualPaneActivity) activity).isDualPaneMode()) {
@@ -3024,6 +2968,55 @@ public final class Utils implements Constants {
 		return BitmapFactory.decodeFile(path, o2);
 	}
 
+	private static List<String> getURLs(final Status status) {
+		final URLEntity[] urls = status.getURLEntities();
+		final MediaEntity[] medias = status.getMediaEntities();
+		if (urls == null && medias == null) return new Extractor().extractURLs(status.getText());
+		final List<String> result = new ArrayList<String>();
+		if (medias != null) {
+			for (final MediaEntity media : medias) {
+				final URL media_url = media.getMediaURL();
+				if (media_url != null) {
+					result.add(parseString(media_url));
+				}
+			}
+		}
+		if (urls != null) {
+			for (final URLEntity url : urls) {
+				final URL expanded_url = url.getExpandedURL();
+				result.add(parseString(expanded_url != null ? expanded_url : url.getURL()));
+			}
+		}
+		return result;
+	}
+
+	private static List<String> getUserMentions(final Status status) {
+		final UserMentionEntity[] entities = status.getUserMentionEntities();
+		if (entities == null) return new Extractor().extractMentionedScreennames(status.getText());
+		final List<String> mentions = new ArrayList<String>(entities.length);
+		for (final UserMentionEntity entity : entities) {
+			mentions.add(entity.getScreenName());
+		}
+		return mentions;
+	}
+
+	/**
+	 * Joins entities in the format of {@link Statuses#USER_MENTIONS}, returns
+	 * null if there's nothing to join.
+	 */
+	private static String joinEntities(final List<String> entities, final boolean lower_case) {
+		if (entities == null || entities.isEmpty()) return null;
+		final StringBuilder builder = new StringBuilder(" ");
+		for (final String entity : entities) {
+			if (isEmpty(entity)) {
+				continue;
+			}
+			builder.append(lower_case ? entity.toLowerCase(Locale.US) : entity);
+			builder.append(' ');
+		}
+		return builder.length() > 1 ? builder.toString() : null;
+	}
+
 	private static void parseEntities(final HtmlBuilder builder, final EntitySupport entities) {
 		final URLEntity[] urls = entities.getURLEntities();
 		// Format media.
@@ -0,0 +1,46 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.webkit.WebSettings;
+
+public final class WebSettingsAccessor {
+
+	/**
+	 * @return Default user agent of WebView, or null if it can't be resolved
+	 *         without creating a WebView.
+	 */
+	public static String getDefaultUserAgent(final Context context) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) return null;
+		return WebSettingsAccessorJBMR1.getDefaultUserAgent(context);
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+	private static class WebSettingsAccessorJBMR1 {
+
+		@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+		private static String getDefaultUserAgent(final Context context) {
+			return WebSettings.getDefaultUserAgent(context);
+		}
+	}
+}
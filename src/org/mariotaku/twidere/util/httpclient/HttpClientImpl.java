@@ -57,7 +57,6 @@ import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
@@ -86,15 +85,12 @@ public class HttpClientImpl implements twitter4j.http.HttpClient, HttpResponseCo
 
 	private static final SSLSocketFactory TRUST_ALL_SSL_SOCKET_FACTORY = TrustAllSSLSocketFactory.getInstance();
 
+	private static PooledClientConnManager sConnectionManager, sTrustAllConnectionManager;
+
 	public HttpClientImpl(final HttpClientConfiguration conf) {
 		this.conf = conf;
-		final SchemeRegistry registry = new SchemeRegistry();
-		final SSLSocketFactory factory = conf.isSSLErrorIgnored() ? TRUST_ALL_SSL_SOCKET_FACTORY : SSLSocketFactory
-				.getSocketFactory();
-		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-		registry.register(new Scheme("https", factory, 443));
 		final HttpParams params = new BasicHttpParams();
-		final ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(params, registry);
+		final PooledClientConnManager cm = getConnectionManager(conf.isSSLErrorIgnored());
 		final DefaultHttpClient client = new DefaultHttpClient(cm, params);
 		final HttpParams client_params = client.getParams();
 		HttpConnectionParams.setConnectionTimeout(client_params, conf.getHttpConnectionTimeout());
@@ -198,9 +194,35 @@ public class HttpClientImpl implements twitter4j.http.HttpClient, HttpResponseCo
 		}
 	}
 
+	/**
+	 * Connection manager is shared by all instances, so only idle
+	 * connections are closed here.
+	 */
 	@Override
 	public void shutdown() {
-		client.getConnectionManager().shutdown();
+		client.getConnectionManager().closeExpiredConnections();
+	}
+
+	/**
+	 * Returns connection manager shared by all clients with same SSL
+	 * settings, so connections are kept alive across requests and accounts.
+	 * Proxy and timeouts are set per client.
+	 */
+	private static synchronized PooledClientConnManager getConnectionManager(final boolean ignore_ssl_error) {
+		if (ignore_ssl_error && sTrustAllConnectionManager != null) return sTrustAllConnectionManager;
+		if (!ignore_ssl_error && sConnectionManager != null) return sConnectionManager;
+		final SchemeRegistry registry = new SchemeRegistry();
+		final SSLSocketFactory factory = ignore_ssl_error ? TRUST_ALL_SSL_SOCKET_FACTORY : SSLSocketFactory
+				.getSocketFactory();
+		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		registry.register(new Scheme("https", factory, 443));
+		final PooledClientConnManager cm = new PooledClientConnManager(registry);
+		if (ignore_ssl_error) {
+			sTrustAllConnectionManager = cm;
+		} else {
+			sConnectionManager = cm;
+		}
+		return cm;
 	}
 
 	final static class TrustAllSSLSocketFactory extends SSLSocketFactory {
@@ -0,0 +1,110 @@
+/*
+ *				Twidere - Twitter client for Android
+ *
+ * Copyright (C) 2012 Mariotaku Lee <mariotaku.lee@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.mariotaku.twidere.util.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Connection manager with larger per-route limits than the default 2, and a
+ * background reaper which closes expired connections and connections idle
+ * for longer than {@link #IDLE_TIMEOUT}, so the pool never hands out a
+ * socket the server has already dropped.
+ */
+public class PooledClientConnManager extends ThreadSafeClientConnManager {
+
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 32;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+
+	/**
+	 * Milliseconds a connection may stay unused in pool.
+	 */
+	public static final long IDLE_TIMEOUT = 30 * 1000;
+
+	private static final long REAPER_INTERVAL = 10 * 1000;
+
+	private static final ScheduledExecutorService sReaper = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "IdleConnectionReaper");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private static final List<PooledClientConnManager> sManagers = new ArrayList<PooledClientConnManager>();
+
+	static {
+		sReaper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				final PooledClientConnManager[] managers;
+				synchronized (sManagers) {
+					managers = sManagers.toArray(new PooledClientConnManager[sManagers.size()]);
+				}
+				for (final PooledClientConnManager manager : managers) {
+					manager.closeExpiredConnections();
+					manager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+			}
+		}, REAPER_INTERVAL, REAPER_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public PooledClientConnManager(final SchemeRegistry registry) {
+		this(registry, DEFAULT_MAX_TOTAL_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+	}
+
+	public PooledClientConnManager(final SchemeRegistry registry, final int max_total, final int max_per_route) {
+		super(createParams(max_total, max_per_route), registry);
+		synchronized (sManagers) {
+			sManagers.add(this);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (sManagers) {
+			sManagers.remove(this);
+		}
+		super.shutdown();
+	}
+
+	private static HttpParams createParams(final int max_total, final int max_per_route) {
+		final HttpParams params = new BasicHttpParams();
+		ConnManagerParams.setMaxTotalConnections(params, max_total);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(max_per_route));
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		return params;
+	}
+}